@@ -0,0 +1,295 @@
+package com.github.romychab.common.arch;
+
+import android.support.annotation.NonNull;
+
+import com.github.romychab.common.utils.threads.NamedThreadFactory;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Background scheduler of a single presenter.
+ *
+ * Runs at most 'concurrency' tasks at the same time. Each Rx task (e.g. a subscription made by
+ * subscribeOn() or an emission delivered by observeOn()) is counted separately; at most 'queueCapacity'
+ * of them wait for a thread. A task that doesn't fit is never rejected: it runs on the calling thread
+ * if its worker is idle, otherwise it waits behind the tasks of its worker, because tasks of one worker
+ * must run one after another. So the subscriber doesn't hang and the error handler of RxJava isn't called.
+ *
+ * Threads are created on demand and released when the scheduler is idle.
+ */
+public class BackgroundScheduler extends Scheduler {
+
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    private final String mName;
+    private final int mConcurrency;
+    private final int mQueueCapacity;
+
+    private ThreadPoolExecutor mExecutor;
+
+    private final AtomicInteger mQueuedCount = new AtomicInteger(); // accepted tasks which haven't been started
+
+    private final AtomicInteger mPeakQueueDepth = new AtomicInteger();
+    private final AtomicLong mExecutedCount = new AtomicLong();
+    private final AtomicLong mOverflowCount = new AtomicLong();
+    private final AtomicLong mTotalWaitNanos = new AtomicLong();
+    private final AtomicLong mMaxWaitNanos = new AtomicLong();
+
+    /**
+     * @param name prefix for names of threads
+     * @param concurrency max number of tasks executed at the same time
+     * @param queueCapacity max number of tasks waiting for a thread
+     */
+    public BackgroundScheduler(String name, int concurrency, int queueCapacity) {
+        mName = name;
+        mConcurrency = Math.max(1, concurrency);
+        mQueueCapacity = Math.max(1, queueCapacity);
+    }
+
+    @NonNull
+    @Override
+    public Worker createWorker() {
+        return new BoundedWorker();
+    }
+
+    /**
+     * Release threads; already queued tasks are still executed (tasks of disposed streams are skipped).
+     * The scheduler starts new threads if it's used again.
+     */
+    @Override
+    public synchronized void shutdown() {
+        if (null != mExecutor) {
+            mExecutor.shutdown();
+            mExecutor = null;
+        }
+    }
+
+    // --- metrics
+
+    /**
+     * @return number of tasks waiting for a thread
+     */
+    public int getQueueDepth() {
+        return mQueuedCount.get();
+    }
+
+    public int getPeakQueueDepth() {
+        return mPeakQueueDepth.get();
+    }
+
+    /**
+     * @return number of threads which are running tasks right now
+     */
+    public synchronized int getActiveCount() {
+        return null == mExecutor ? 0 : mExecutor.getActiveCount();
+    }
+
+    /**
+     * @return number of tasks executed by threads of this scheduler
+     */
+    public long getExecutedCount() {
+        return mExecutedCount.get();
+    }
+
+    /**
+     * @return number of tasks which haven't fit into the queue and have been run on the calling thread
+     */
+    public long getOverflowCount() {
+        return mOverflowCount.get();
+    }
+
+    /**
+     * @return average time tasks spent in the queue before execution
+     */
+    public long getAverageWaitMillis() {
+        long executed = mExecutedCount.get();
+        return executed == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(mTotalWaitNanos.get() / executed);
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(mMaxWaitNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return mName + "{queue=" + getQueueDepth() + ", peakQueue=" + getPeakQueueDepth() +
+            ", active=" + getActiveCount() + ", executed=" + getExecutedCount() +
+            ", overflow=" + getOverflowCount() + ", avgWaitMs=" + getAverageWaitMillis() +
+            ", maxWaitMs=" + getMaxWaitMillis() + "}";
+    }
+
+    // --- private
+
+    private synchronized ThreadPoolExecutor executor() {
+        if (null == mExecutor) {
+            mExecutor = new ThreadPoolExecutor(mConcurrency, mConcurrency, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory(mName));
+            mExecutor.allowCoreThreadTimeOut(true);
+        }
+        return mExecutor;
+    }
+
+    private void execute(Runnable drain) {
+        while (true) {
+            ThreadPoolExecutor executor = executor();
+            try {
+                executor.execute(drain);
+                return;
+            } catch (RejectedExecutionException e) {
+                // shut down concurrently, the next attempt starts a new pool
+                synchronized (this) {
+                    if (mExecutor == executor) {
+                        mExecutor = null;
+                    }
+                }
+            }
+        }
+    }
+
+    private void onExecuted(long waitNanos) {
+        mExecutedCount.incrementAndGet();
+        mTotalWaitNanos.addAndGet(waitNanos);
+        long max;
+        do {
+            max = mMaxWaitNanos.get();
+        } while (waitNanos > max && !mMaxWaitNanos.compareAndSet(max, waitNanos));
+    }
+
+    private void onQueued(int depth) {
+        int peak;
+        do {
+            peak = mPeakQueueDepth.get();
+        } while (depth > peak && !mPeakQueueDepth.compareAndSet(peak, depth));
+    }
+
+    /**
+     * Runs its tasks one after another in the order of scheduling, like workers of RxJava's
+     * executor scheduler, but counts every task against the capacity of the scheduler.
+     */
+    private final class BoundedWorker extends Worker implements Runnable {
+
+        private final ConcurrentLinkedQueue<Task> mTasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger mWip = new AtomicInteger();
+
+        private volatile boolean mDisposed;
+
+        @NonNull
+        @Override
+        public Disposable schedule(@NonNull Runnable run, long delay, @NonNull TimeUnit unit) {
+            if (mDisposed) {
+                return Disposables.disposed();
+            }
+            final Runnable decorated = RxJavaPlugins.onSchedule(run);
+            if (delay <= 0) {
+                return enqueue(decorated);
+            }
+            // the task takes a place in the queue only when it's due
+            final CompositeDisposable task = new CompositeDisposable();
+            task.add(Schedulers.single().scheduleDirect(() -> task.add(enqueue(decorated)), delay, unit));
+            return task;
+        }
+
+        @Override
+        public void dispose() {
+            mDisposed = true; // queued tasks are skipped by the drain loop
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return mDisposed;
+        }
+
+        // drain loop, executed by threads of the pool
+        @Override
+        public void run() {
+            int missed = 1;
+            while (true) {
+                Task task;
+                while (null != (task = mTasks.poll())) {
+                    mQueuedCount.decrementAndGet();
+                    if (!mDisposed && !task.isDisposed()) {
+                        onExecuted(System.nanoTime() - task.mQueuedAt);
+                        task.run();
+                    }
+                }
+                missed = mWip.addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        private Disposable enqueue(Runnable run) {
+            if (mDisposed) {
+                return Disposables.disposed();
+            }
+            Task task = new Task(run);
+            int queued = mQueuedCount.incrementAndGet();
+            if (queued > mQueueCapacity && mWip.compareAndSet(0, 1)) {
+                // doesn't fit; the worker is idle, so running here keeps the order of its tasks
+                mQueuedCount.decrementAndGet();
+                mOverflowCount.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    if (mWip.decrementAndGet() != 0) {
+                        execute(this); // tasks scheduled meanwhile
+                    }
+                }
+                return task;
+            }
+            mTasks.offer(task);
+            onQueued(queued);
+            if (mWip.getAndIncrement() == 0) {
+                execute(this);
+            }
+            return task;
+        }
+    }
+
+    private static final class Task implements Runnable, Disposable {
+        private final Runnable mDelegate;
+        private final long mQueuedAt = System.nanoTime();
+
+        private volatile boolean mDisposed;
+
+        Task(Runnable delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public void run() {
+            if (mDisposed) {
+                return;
+            }
+            try {
+                mDelegate.run();
+            } finally {
+                mDisposed = true;
+            }
+        }
+
+        @Override
+        public void dispose() {
+            mDisposed = true;
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return mDisposed;
+        }
+    }
+}
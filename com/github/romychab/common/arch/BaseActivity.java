@@ -1,6 +1,7 @@
 package com.github.romychab.common.arch;
 
 import android.os.Bundle;
+import android.view.ViewGroup;
 import android.widget.Toast;
 
 import com.arellomobile.mvp.MvpAppCompatActivity;
@@ -27,6 +28,23 @@ public abstract class BaseActivity
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         mDelegate = new BaseActivityDelegate(this, getSupportFragmentManager(), registerPresenters());
+        mDelegate.setProgressDelays(getProgressShowDelay(), getProgressMinDisplayTime());
+        if (isOverlayProgressEnabled()) {
+            mDelegate.useOverlayProgress((ViewGroup) findViewById(android.R.id.content));
+        }
+    }
+
+    @Override
+    public void onBackPressed() {
+        if (!mDelegate.onBackPressed()) {
+            super.onBackPressed();
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        mDelegate.onSaveInstanceState();
+        super.onSaveInstanceState(outState);
     }
 
     @Override
@@ -39,6 +57,16 @@ public abstract class BaseActivity
         mDelegate.unregisterProgressCallback(callbacks);
     }
 
+    @Override
+    public void registerProgressRenderer(int progressId, IProgressRenderer renderer) {
+        mDelegate.registerProgressRenderer(progressId, renderer);
+    }
+
+    @Override
+    public void unregisterProgressRenderer(int progressId) {
+        mDelegate.unregisterProgressRenderer(progressId);
+    }
+
     @Override
     protected void onDestroy() {
         mDelegate.onDestroy();
@@ -64,4 +92,26 @@ public abstract class BaseActivity
 
     protected abstract BasePresenter[] registerPresenters();
 
+    /**
+     * Override and return TRUE to show the default progress in an overlay over the content
+     * instead of a progress dialog.
+     */
+    protected boolean isOverlayProgressEnabled() {
+        return false;
+    }
+
+    /**
+     * Override to change how long the default progress has to last to be shown (0 to show it immediately).
+     */
+    protected long getProgressShowDelay() {
+        return BaseActivityDelegate.DEFAULT_PROGRESS_SHOW_DELAY_MILLIS;
+    }
+
+    /**
+     * Override to change min time during which the default progress stays visible once shown.
+     */
+    protected long getProgressMinDisplayTime() {
+        return BaseActivityDelegate.DEFAULT_PROGRESS_MIN_DISPLAY_MILLIS;
+    }
+
 }
@@ -2,12 +2,13 @@ package com.github.romychab.common.arch;
 
 import android.content.Context;
 import android.support.v4.app.FragmentManager;
-import android.widget.Toast;
+import android.view.ViewGroup;
 
 import com.github.romychab.common.R;
 import com.github.romychab.common.arch.IBaseView.ProgressAction;
 import com.github.romychab.common.arch.IBaseView.ProgressType;
 import com.github.romychab.common.dialogs.ProgressDialogFragment;
+import com.github.romychab.common.utils.handlers.UiHandler;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -18,6 +19,9 @@ public class BaseActivityDelegate
         IDefaultProgressDialogHolder,
         ProgressDialogFragment.IProgressCallbacks {
 
+    public static final long DEFAULT_PROGRESS_SHOW_DELAY_MILLIS = 300;
+    public static final long DEFAULT_PROGRESS_MIN_DISPLAY_MILLIS = 500;
+
     private Set<ProgressDialogFragment.IProgressCallbacks> mProgressCallbacks = new HashSet<>();
 
     private BasePresenter[] mPresenters;
@@ -25,10 +29,67 @@ public class BaseActivityDelegate
     private Context mContext;
     private FragmentManager mFragmentManager;
 
+    private ErrorAggregator mErrorAggregator;
+
+    private ProgressRegistry mProgressRegistry = new ProgressRegistry();
+
+    private DelayedProgressRenderer mDefaultProgressRenderer;
+
+    private OverlayProgressRenderer mOverlayProgressRenderer;
+
+    private long mProgressShowDelayMillis = DEFAULT_PROGRESS_SHOW_DELAY_MILLIS;
+    private long mProgressMinDisplayMillis = DEFAULT_PROGRESS_MIN_DISPLAY_MILLIS;
+
     public BaseActivityDelegate(Context context, FragmentManager fragmentManager, BasePresenter[] presenters) {
         mContext = context;
         mFragmentManager = fragmentManager;
         mPresenters = presenters;
+        mErrorAggregator = new ErrorAggregator(context, UiHandler.main());
+        setDefaultProgressRenderer(new DialogProgressRenderer(context, fragmentManager));
+    }
+
+    /**
+     * @param showDelayMillis the default progress is shown only if it lasts longer than this value
+     * @param minDisplayMillis min time during which the default progress stays visible once shown
+     */
+    public void setProgressDelays(long showDelayMillis, long minDisplayMillis) {
+        mProgressShowDelayMillis = showDelayMillis;
+        mProgressMinDisplayMillis = minDisplayMillis;
+        mDefaultProgressRenderer.setDelays(showDelayMillis, minDisplayMillis);
+    }
+
+    /**
+     * Replace the renderer of the default progress ({@link DialogProgressRenderer} is used by default).
+     */
+    public void setDefaultProgressRenderer(IProgressRenderer renderer) {
+        if (null != mDefaultProgressRenderer) {
+            mDefaultProgressRenderer.reset();
+        }
+        mOverlayProgressRenderer = null;
+        mDefaultProgressRenderer = new DelayedProgressRenderer(
+            renderer,
+            UiHandler.main(),
+            mProgressShowDelayMillis,
+            mProgressMinDisplayMillis
+        );
+        mProgressRegistry.setDefaultRenderer(mDefaultProgressRenderer);
+    }
+
+    /**
+     * Show the default progress in an overlay instead of a dialog.
+     * @param container content frame of the activity
+     */
+    public void useOverlayProgress(ViewGroup container) {
+        OverlayProgressRenderer renderer = new OverlayProgressRenderer(mContext, container, this);
+        setDefaultProgressRenderer(renderer);
+        mOverlayProgressRenderer = renderer;
+    }
+
+    /**
+     * @return TRUE if the back press has been consumed (by cancelling the progress overlay)
+     */
+    public boolean onBackPressed() {
+        return null != mOverlayProgressRenderer && mOverlayProgressRenderer.onBackPressed();
     }
 
     @Override
@@ -41,77 +102,58 @@ public class BaseActivityDelegate
         mProgressCallbacks.remove(callbacks);
     }
 
+    @Override
+    public void registerProgressRenderer(int progressId, IProgressRenderer renderer) {
+        mProgressRegistry.register(progressId, renderer);
+    }
+
+    @Override
+    public void unregisterProgressRenderer(int progressId) {
+        mProgressRegistry.unregister(progressId);
+    }
+
     @Override
     public void onProgressCancelled(String progressTag) {
         if (ProgressDialogFragment.TAG.equals(progressTag)) {
+            mDefaultProgressRenderer.reset();
             for (ProgressDialogFragment.IProgressCallbacks callbacks : mProgressCallbacks) {
                 callbacks.onProgressCancelled(progressTag);
             }
             for (BasePresenter presenter : mPresenters) {
-                presenter.cancelTasks();
+                // the dialog renders the default progress; other tasks are not affected
+                presenter.cancelProgress(ProgressType.DEFAULT.getId());
             }
         }
     }
 
+    public void onSaveInstanceState() {
+        // pending show/hide must be committed before the fragment manager saves its state
+        mDefaultProgressRenderer.flush();
+    }
+
     public void onDestroy() {
         mProgressCallbacks.clear();
+        mErrorAggregator.clear();
+        mDefaultProgressRenderer.cancelPending();
+        mProgressRegistry.release();
     }
 
     public void onError(Throwable error) {
+        String message = null;
         if (error instanceof BaseException) {
-            Toast.makeText(mContext, ((BaseException) error).getUserReadableMessage(), Toast.LENGTH_SHORT).show();
+            message = ((BaseException) error).getUserReadableMessage();
         }
-        else {
-            Toast.makeText(mContext, R.string.err_unknown, Toast.LENGTH_SHORT).show();
+        if (null == message) {
+            message = mContext.getString(R.string.err_unknown);
         }
+        mErrorAggregator.add(message);
     }
 
     public void setProgress(ProgressAction action, ProgressType progressType) {
-        if (progressType.isDefault()) {
-            switch (action) {
-                case SHOW:
-                    showProgressDialog(progressType);
-                    break;
-                case HIDE:
-                    hideProgressDialog(progressType);
-                    break;
-                case UPDATE:
-                    updateProgressDialog(progressType);
-                    break;
-            }
-        }
-
+        mProgressRegistry.setProgress(action, progressType);
     }
 
     public void hideAllProgresses() {
-        hideProgressDialog(ProgressType.DEFAULT);
-    }
-
-
-    private void updateProgressDialog(ProgressType progressType) {
-        ProgressDialogFragment fragment = (ProgressDialogFragment)
-            mFragmentManager.findFragmentByTag(ProgressDialogFragment.TAG);
-        if (null != fragment) {
-            fragment.updateMessage(null == progressType.getMessage() ? mContext.getString(R.string.waiting_message) : progressType.getMessage());
-        }
-    }
-
-    private void hideProgressDialog(ProgressType progressType) {
-        ProgressDialogFragment fragment = (ProgressDialogFragment)
-            mFragmentManager.findFragmentByTag(ProgressDialogFragment.TAG);
-        if (null != fragment) {
-            fragment.dismiss();
-        }
-    }
-
-    private void showProgressDialog(ProgressType progressType) {
-        ProgressDialogFragment fragment = ProgressDialogFragment.newInstance(
-            new ProgressDialogFragment.Options()
-                .setTitle(mContext.getString(R.string.waiting_title))
-                .setIndeterminate(true)
-                .setMessage(null == progressType.getMessage() ? mContext.getString(R.string.waiting_message) : progressType.getMessage()),
-            null
-        );
-        fragment.show(mFragmentManager, ProgressDialogFragment.TAG);
+        mProgressRegistry.hideAll();
     }
 }
@@ -48,4 +48,16 @@ public abstract class BaseFragment
 
     protected abstract BasePresenter[] registerPresenters();
 
+    /**
+     * Show progress with the specified ID by the renderer, e.g. by a spinner inside this fragment.
+     * Call it after {@link #onAttach(Context)} and unregister the renderer when its views are destroyed.
+     */
+    protected void registerProgressRenderer(int progressId, IProgressRenderer renderer) {
+        mDelegate.registerProgressRenderer(progressId, renderer);
+    }
+
+    protected void unregisterProgressRenderer(int progressId) {
+        mDelegate.unregisterProgressRenderer(progressId);
+    }
+
 }
@@ -28,6 +28,14 @@ public class BaseFragmentDelegate
         mProgressDialogHolder.unregisterProgressCallback(this);
     }
 
+    public void registerProgressRenderer(int progressId, IProgressRenderer renderer) {
+        mProgressDialogHolder.registerProgressRenderer(progressId, renderer);
+    }
+
+    public void unregisterProgressRenderer(int progressId) {
+        mProgressDialogHolder.unregisterProgressRenderer(progressId);
+    }
+
     public void onError(Throwable error) {
         mActivityView.onError(error);
     }
@@ -44,7 +52,8 @@ public class BaseFragmentDelegate
     public void onProgressCancelled(String progressTag) {
         if (ProgressDialogFragment.TAG.equals(progressTag)) {
             for (BasePresenter presenter : mPresenters) {
-                presenter.cancelTasks();
+                // the dialog renders the default progress; other tasks are not affected
+                presenter.cancelProgress(IBaseView.ProgressType.DEFAULT.getId());
             }
         }
     }
@@ -1,7 +1,6 @@
 package com.github.romychab.common.arch;
 
-import android.os.Handler;
-import android.util.Log;
+import android.os.Looper;
 
 import com.arellomobile.mvp.MvpPresenter;
 import com.github.romychab.common.arch.IBaseView.ProgressAction;
@@ -9,44 +8,71 @@ import com.github.romychab.common.arch.IBaseView.ProgressType;
 import com.github.romychab.common.utils.handlers.IHandler;
 import com.github.romychab.common.utils.handlers.UiHandler;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import io.reactivex.Flowable;
 import io.reactivex.FlowableTransformer;
+import io.reactivex.Single;
 import io.reactivex.SingleTransformer;
 import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import io.reactivex.disposables.SerialDisposable;
 
 
 public class BasePresenter<V extends IBaseView> extends MvpPresenter<V> {
 
     public static final String TAG = BasePresenter.class.getSimpleName();
 
+    public static final int DEFAULT_BACKGROUND_CONCURRENCY = 2;
+    public static final int DEFAULT_BACKGROUND_QUEUE_CAPACITY = 64;
+
+    public static final long DEFAULT_PROGRESS_MAX = 100;
+
     private IHandler mHandler;
 
     private SafeScheduler mSafeScheduler;
 
+    private BackgroundScheduler mBackgroundScheduler;
+
     private CompositeDisposable mCompositeDisposable;
 
+    private ErrorPipeline mErrorPipeline;
+
     private long mMainThreadId;
 
     private Map<Integer, Integer> mProgresses = new HashMap<>();
 
+    private final Map<Integer, CompositeDisposable> mProgressDisposables = new HashMap<>();
+
+    /**
+     * Create a presenter that delivers results to the main thread through the shared
+     * {@link UiHandler#main()} handler. May be called from any thread.
+     */
     public BasePresenter() {
-        init(new UiHandler(new Handler()));
+        init(UiHandler.main(), Looper.getMainLooper().getThread().getId());
     }
 
+    /**
+     * @param handler handler bound to the current thread
+     */
     public BasePresenter(IHandler handler) {
-        init(handler);
+        init(handler, Thread.currentThread().getId());
     }
 
-    private void init(IHandler handler) {
+    private void init(IHandler handler, long mainThreadId) {
         mHandler = handler;
 
         mSafeScheduler = new SafeScheduler(mHandler);
 
         mCompositeDisposable = new CompositeDisposable();
-        mMainThreadId = Thread.currentThread().getId();
+        mErrorPipeline = new ErrorPipeline();
+        mMainThreadId = mainThreadId;
+
+        PresenterWatchdog.onCreated(this);
     }
 
     @Override
@@ -55,34 +81,146 @@ public class BasePresenter<V extends IBaseView> extends MvpPresenter<V> {
         getViewState().hideAllProgresses();
     }
 
+    @Override
+    public void attachView(V view) {
+        super.attachView(view);
+        PresenterWatchdog.onViewsChanged(this);
+    }
+
+    @Override
+    public void detachView(V view) {
+        super.detachView(view);
+        PresenterWatchdog.onViewsChanged(this);
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
+        PresenterWatchdog.onDestroyed(this);
         cancelTasks();
+        mSafeScheduler.cancelAll();
+        synchronized (this) {
+            if (null != mBackgroundScheduler) {
+                mBackgroundScheduler.shutdown();
+            }
+        }
     }
 
     public SafeScheduler safeScheduler() {
         return mSafeScheduler;
     }
 
+    /**
+     * Scheduler for background work of this presenter. Unlike {@link io.reactivex.schedulers.Schedulers#io()}
+     * it has a limited number of threads and a bounded queue (see {@link #getBackgroundConcurrency()} and
+     * {@link #getBackgroundQueueCapacity()}; tasks that don't fit into the queue run on the calling thread)
+     * and its threads are released in {@link #onDestroy()}.
+     * Tasks are cancelled by disposing their streams (see {@link #registerDisposable(Disposable)}
+     * and {@link #cancelTasks()}); queued tasks of disposed streams are skipped by the scheduler.
+     */
+    public synchronized BackgroundScheduler backgroundScheduler() {
+        if (null == mBackgroundScheduler) {
+            mBackgroundScheduler = new BackgroundScheduler(
+                getClass().getSimpleName(),
+                getBackgroundConcurrency(),
+                getBackgroundQueueCapacity()
+            );
+        }
+        return mBackgroundScheduler;
+    }
+
     public void cancelTasks() {
         mCompositeDisposable.dispose();
         mCompositeDisposable = null;
         mCompositeDisposable = new CompositeDisposable();
+
+        List<CompositeDisposable> progressDisposables;
+        synchronized (mProgressDisposables) {
+            progressDisposables = new ArrayList<>(mProgressDisposables.values());
+            mProgressDisposables.clear();
+        }
+        for (CompositeDisposable disposables : progressDisposables) {
+            disposables.dispose();
+        }
+    }
+
+    /**
+     * Cancel only streams composed with {@link #withSingleProgress(ProgressType)} or
+     * {@link #withFlowableProgress(ProgressType)} for the specified progress ID.
+     * Other tasks of the presenter keep running.
+     */
+    public void cancelProgress(int progressId) {
+        CompositeDisposable disposables;
+        synchronized (mProgressDisposables) {
+            disposables = mProgressDisposables.remove(progressId);
+        }
+        if (null != disposables) {
+            disposables.dispose();
+        }
+    }
+
+    /**
+     * Override to change max number of background tasks running at the same time.
+     */
+    protected int getBackgroundConcurrency() {
+        return DEFAULT_BACKGROUND_CONCURRENCY;
+    }
+
+    /**
+     * Override to change max number of background tasks waiting for execution.
+     */
+    protected int getBackgroundQueueCapacity() {
+        return DEFAULT_BACKGROUND_QUEUE_CAPACITY;
     }
 
     // --- Single composers
 
     protected <D> SingleTransformer<D, D> withSingleProgress(ProgressType progress) {
-        return upstream -> upstream
-            .doOnSubscribe( disposable -> onProgressStart(progress) )
-            .doFinally( () -> onProgressFinish(progress) );
+        return upstream -> Single.defer( () -> {
+            ProgressLink link = new ProgressLink(progress.getId());
+            return upstream
+                .doOnSubscribe( disposable -> onProgressStart(progress) )
+                .doFinally( () -> {
+                    link.unbind();
+                    onProgressFinish(progress);
+                })
+                .doOnSubscribe(link::bind); // disposing this level also runs doFinally
+        });
     }
 
     protected <D> SingleTransformer<D, D> withSingleProgress() {
         return withSingleProgress(ProgressType.DEFAULT);
     }
 
+    /**
+     * Show determinate progress while the single is running.
+     * @param progress values of progress in range [0..{@link #DEFAULT_PROGRESS_MAX}]; they may be emitted
+     *                 on any thread and as often as needed, the view samples the latest value once per frame
+     */
+    protected <D> SingleTransformer<D, D> withDeterminateProgress(ProgressType progressType, Flowable<Long> progress) {
+        return withDeterminateProgress(progressType, progress, DEFAULT_PROGRESS_MAX);
+    }
+
+    /**
+     * Show determinate progress while the single is running.
+     * @param progress values of progress in range [0..max]
+     * @param max max value of progress
+     */
+    protected <D> SingleTransformer<D, D> withDeterminateProgress(ProgressType progressType, Flowable<Long> progress, long max) {
+        return upstream -> Single.defer( () -> {
+            ProgressCell cell = new ProgressCell(max);
+            SerialDisposable progressDisposable = new SerialDisposable();
+            return upstream
+                .doOnSubscribe( disposable -> progressDisposable.set(
+                    progress.subscribe(cell::set, error -> { /* the progress just stops, errors are reported by upstream */ })
+                ))
+                .doFinally(progressDisposable::dispose)
+                .compose(withSingleProgress(
+                    ProgressType.determinate(progressType.getId(), progressType.getMessage(), cell)
+                ));
+        });
+    }
+
     protected <D> SingleTransformer<D, D> withSingleErrors() {
         return upstream -> upstream.doOnError(this::onError);
     }
@@ -100,9 +238,16 @@ public class BasePresenter<V extends IBaseView> extends MvpPresenter<V> {
     // --- Flowable composers
 
     protected <D> FlowableTransformer<D, D> withFlowableProgress(ProgressType progress) {
-        return upstream -> upstream
-            .doOnSubscribe( subscription -> onProgressStart(progress) )
-            .doFinally( () -> onProgressFinish(progress) );
+        return upstream -> Flowable.defer( () -> {
+            ProgressLink link = new ProgressLink(progress.getId());
+            return upstream
+                .doOnSubscribe( subscription -> onProgressStart(progress) )
+                .doFinally( () -> {
+                    link.unbind();
+                    onProgressFinish(progress);
+                })
+                .doOnSubscribe( subscription -> link.bind(Disposables.fromSubscription(subscription)) );
+        });
     }
 
     protected <D> FlowableTransformer<D, D> withFlowableProgress() {
@@ -129,12 +274,16 @@ public class BasePresenter<V extends IBaseView> extends MvpPresenter<V> {
         mCompositeDisposable.add(disposable);
     }
 
+    int getRegisteredDisposablesCount() {
+        return mCompositeDisposable.size();
+    }
+
     protected void safeRun(Runnable runnable) {
         if (mMainThreadId == Thread.currentThread().getId()) {
             runnable.run();
         }
         else {
-            mHandler.post(runnable);
+            mHandler.postDelayed(0, runnable, mSafeScheduler); // tagged, so it is cancelled with the scheduler
         }
     }
 
@@ -181,7 +330,55 @@ public class BasePresenter<V extends IBaseView> extends MvpPresenter<V> {
     }
 
     private void onError(Throwable throwable) {
-        Log.e(TAG, "Error!", throwable);
-        safeRun( () -> getViewState().onError(throwable) );
+        if (mErrorPipeline.submit(throwable)) {
+            safeRun( () -> getViewState().onError(throwable) );
+        }
+    }
+
+    /**
+     * Connects a stream to the ID of its progress, so it may be cancelled by {@link #cancelProgress(int)}.
+     */
+    private final class ProgressLink implements Disposable {
+        private final int mProgressId;
+        private volatile Disposable mUpstream;
+
+        ProgressLink(int progressId) {
+            mProgressId = progressId;
+        }
+
+        void bind(Disposable upstream) {
+            mUpstream = upstream;
+            synchronized (mProgressDisposables) {
+                CompositeDisposable disposables = mProgressDisposables.get(mProgressId);
+                if (null == disposables) {
+                    disposables = new CompositeDisposable();
+                    mProgressDisposables.put(mProgressId, disposables);
+                }
+                disposables.add(this);
+            }
+        }
+
+        void unbind() {
+            synchronized (mProgressDisposables) {
+                CompositeDisposable disposables = mProgressDisposables.get(mProgressId);
+                if (null != disposables && disposables.delete(this) && disposables.size() == 0) {
+                    mProgressDisposables.remove(mProgressId);
+                }
+            }
+        }
+
+        @Override
+        public void dispose() {
+            Disposable upstream = mUpstream;
+            if (null != upstream) {
+                upstream.dispose();
+            }
+        }
+
+        @Override
+        public boolean isDisposed() {
+            Disposable upstream = mUpstream;
+            return null != upstream && upstream.isDisposed();
+        }
     }
 }
@@ -0,0 +1,195 @@
+package com.github.romychab.common.arch;
+
+import android.os.SystemClock;
+
+import com.github.romychab.common.arch.IBaseView.ProgressType;
+import com.github.romychab.common.utils.handlers.IHandler;
+
+/**
+ * Decorator that prevents flickering of a progress:
+ * <ul>
+ *     <li>the progress is shown only if it's still active after 'showDelay' milliseconds,
+ *         so the target renderer isn't touched at all for short operations;</li>
+ *     <li>once shown, the progress stays visible at least 'minDisplay' milliseconds.</li>
+ * </ul>
+ */
+public class DelayedProgressRenderer implements IProgressRenderer {
+
+    private static final int STATE_HIDDEN = 0;
+    private static final int STATE_SHOW_PENDING = 1;
+    private static final int STATE_SHOWN = 2;
+    private static final int STATE_HIDE_PENDING = 3;
+
+    private final IProgressRenderer mTarget;
+    private final IHandler mHandler;
+
+    private long mShowDelayMillis;
+    private long mMinDisplayMillis;
+
+    private int mState = STATE_HIDDEN;
+    private long mShownAt;
+    private ProgressType mProgressType;
+
+    private boolean mHasValue = false;
+    private long mValue;
+    private long mMax;
+
+    public DelayedProgressRenderer(IProgressRenderer target, IHandler handler, long showDelayMillis, long minDisplayMillis) {
+        mTarget = target;
+        mHandler = handler;
+        setDelays(showDelayMillis, minDisplayMillis);
+    }
+
+    public void setDelays(long showDelayMillis, long minDisplayMillis) {
+        mShowDelayMillis = Math.max(0, showDelayMillis);
+        mMinDisplayMillis = Math.max(0, minDisplayMillis);
+    }
+
+    @Override
+    public void show(ProgressType progressType) {
+        mProgressType = progressType;
+        switch (mState) {
+            case STATE_HIDDEN:
+                if (mShowDelayMillis == 0) {
+                    doShow();
+                }
+                else {
+                    mState = STATE_SHOW_PENDING;
+                    mHandler.postDelayed(mShowDelayMillis, mShowRunnable);
+                }
+                break;
+            case STATE_HIDE_PENDING:
+                mHandler.cancel(mHideRunnable);
+                mState = STATE_SHOWN;
+                mTarget.update(progressType);
+                break;
+            case STATE_SHOWN:
+                mTarget.update(progressType);
+                break;
+        }
+    }
+
+    @Override
+    public void update(ProgressType progressType) {
+        mProgressType = progressType;
+        if (mState == STATE_SHOWN || mState == STATE_HIDE_PENDING) {
+            mTarget.update(progressType);
+        }
+    }
+
+    @Override
+    public void updateValue(long value, long max) {
+        mHasValue = true;
+        mValue = value;
+        mMax = max;
+        if (mState == STATE_SHOWN || mState == STATE_HIDE_PENDING) {
+            mTarget.updateValue(value, max);
+        }
+    }
+
+    @Override
+    public void hide() {
+        switch (mState) {
+            case STATE_SHOW_PENDING:
+                // finished before the delay, the target hasn't been touched
+                mHandler.cancel(mShowRunnable);
+                mState = STATE_HIDDEN;
+                mHasValue = false;
+                break;
+            case STATE_HIDDEN:
+                // the target may be visible without this decorator knowing it (e.g. restored by the system)
+                mTarget.hide();
+                break;
+            case STATE_SHOWN:
+                long remaining = mMinDisplayMillis - (SystemClock.uptimeMillis() - mShownAt);
+                if (remaining > 0) {
+                    mState = STATE_HIDE_PENDING;
+                    mHandler.postDelayed(remaining, mHideRunnable);
+                }
+                else {
+                    doHide();
+                }
+                break;
+        }
+    }
+
+    /**
+     * Hide the target renderer immediately, even if this decorator thinks it's hidden
+     * (e.g. a progress dialog restored by the system).
+     */
+    public void reset() {
+        cancelPending();
+        mState = STATE_HIDDEN;
+        mHasValue = false;
+        mTarget.cancel();
+    }
+
+    @Override
+    public void cancel() {
+        reset();
+    }
+
+    /**
+     * Perform pending show/hide right now, e.g. before the state of the screen is saved.
+     */
+    public void flush() {
+        if (mState == STATE_SHOW_PENDING) {
+            mHandler.cancel(mShowRunnable);
+            doShow();
+        }
+        else if (mState == STATE_HIDE_PENDING) {
+            mHandler.cancel(mHideRunnable);
+            doHide();
+        }
+    }
+
+    /**
+     * Forget pending show/hide without touching the target renderer.
+     */
+    public void cancelPending() {
+        mHandler.cancel(mShowRunnable);
+        mHandler.cancel(mHideRunnable);
+        if (mState == STATE_SHOW_PENDING) {
+            mState = STATE_HIDDEN;
+        }
+        else if (mState == STATE_HIDE_PENDING) {
+            mState = STATE_SHOWN;
+        }
+    }
+
+    // --- private
+
+    private void doShow() {
+        mState = STATE_SHOWN;
+        mShownAt = SystemClock.uptimeMillis();
+        mTarget.show(mProgressType);
+        if (mHasValue) {
+            // the value has been sampled while the progress was waiting for the delay
+            mTarget.updateValue(mValue, mMax);
+        }
+    }
+
+    private void doHide() {
+        mState = STATE_HIDDEN;
+        mHasValue = false;
+        mTarget.hide();
+    }
+
+    private final Runnable mShowRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mState == STATE_SHOW_PENDING) {
+                doShow();
+            }
+        }
+    };
+
+    private final Runnable mHideRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mState == STATE_HIDE_PENDING) {
+                doHide();
+            }
+        }
+    };
+}
@@ -0,0 +1,77 @@
+package com.github.romychab.common.arch;
+
+import android.content.Context;
+import android.support.v4.app.FragmentManager;
+
+import com.github.romychab.common.R;
+import com.github.romychab.common.arch.IBaseView.ProgressType;
+import com.github.romychab.common.dialogs.ProgressDialogFragment;
+
+/**
+ * Shows progress in {@link ProgressDialogFragment}.
+ * The dialog is looked up in the fragment manager only once (to pick up a dialog restored
+ * by the system), after that the shown dialog is referenced directly.
+ */
+public class DialogProgressRenderer implements IProgressRenderer {
+
+    private Context mContext;
+    private FragmentManager mFragmentManager;
+
+    private ProgressDialogFragment mFragment;
+
+    public DialogProgressRenderer(Context context, FragmentManager fragmentManager) {
+        mContext = context;
+        mFragmentManager = fragmentManager;
+        mFragment = (ProgressDialogFragment) fragmentManager.findFragmentByTag(ProgressDialogFragment.TAG);
+    }
+
+    @Override
+    public void show(ProgressType progressType) {
+        if (null != mFragment) {
+            // e.g. the dialog has been restored by the system
+            mFragment.updateIndeterminate(true);
+            update(progressType);
+            return;
+        }
+        ProgressDialogFragment fragment = ProgressDialogFragment.newInstance(
+            new ProgressDialogFragment.Options()
+                .setTitle(mContext.getString(R.string.waiting_title))
+                .setIndeterminate(true)
+                .setMessage(getMessage(progressType)),
+            null
+        );
+        fragment.show(mFragmentManager, ProgressDialogFragment.TAG);
+        mFragment = fragment;
+    }
+
+    @Override
+    public void update(ProgressType progressType) {
+        if (null != mFragment) {
+            mFragment.updateMessage(getMessage(progressType));
+        }
+    }
+
+    @Override
+    public void updateValue(long value, long max) {
+        if (null != mFragment) {
+            mFragment
+                .updateIndeterminate(false)
+                .updateMaxValue(ProgressCell.toIntMax(max))
+                .updateValue(ProgressCell.toIntValue(value, max));
+        }
+    }
+
+    @Override
+    public void hide() {
+        if (null != mFragment) {
+            mFragment.dismiss();
+            mFragment = null;
+        }
+    }
+
+    // --- private
+
+    private String getMessage(ProgressType progressType) {
+        return null == progressType.getMessage() ? mContext.getString(R.string.waiting_message) : progressType.getMessage();
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.romychab.common.arch;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.widget.Toast;
+
+import com.github.romychab.common.utils.handlers.IHandler;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Collects user-readable error messages arriving within a short period of time and shows
+ * them in one toast instead of a separate toast per error.
+ * Must be used from the main thread.
+ */
+public class ErrorAggregator {
+
+    public static final long DEFAULT_DELAY_MILLIS = 300;
+
+    private static final long SHOWN_MESSAGE_TTL_MILLIS = 2000; // approx. duration of Toast.LENGTH_SHORT
+    private static final int MAX_LINES = 3;
+
+    private final Context mContext;
+    private final IHandler mHandler;
+    private final long mDelayMillis;
+
+    private final Set<String> mPendingMessages = new LinkedHashSet<>();
+    private boolean mFlushScheduled = false;
+
+    private Toast mToast;
+    private final Set<String> mShownMessages = new HashSet<>();
+    private long mShownAt;
+
+    public ErrorAggregator(Context context, IHandler handler) {
+        this(context, handler, DEFAULT_DELAY_MILLIS);
+    }
+
+    /**
+     * @param delayMillis how long to wait for other errors before showing a toast
+     */
+    public ErrorAggregator(Context context, IHandler handler, long delayMillis) {
+        mContext = context;
+        mHandler = handler;
+        mDelayMillis = delayMillis;
+    }
+
+    public void add(String message) {
+        if (TextUtils.isEmpty(message)) {
+            return;
+        }
+        if (mShownMessages.contains(message) && SystemClock.uptimeMillis() - mShownAt < SHOWN_MESSAGE_TTL_MILLIS) {
+            // the message is still on the screen
+            return;
+        }
+        mPendingMessages.add(message);
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mHandler.postDelayed(mDelayMillis, mFlush);
+        }
+    }
+
+    /**
+     * Drop all pending messages, e.g. when the screen is going to be destroyed.
+     */
+    public void clear() {
+        mHandler.cancel(mFlush);
+        mFlushScheduled = false;
+        mPendingMessages.clear();
+    }
+
+    // --- private
+
+    private void flush() {
+        mFlushScheduled = false;
+        if (mPendingMessages.isEmpty()) {
+            return;
+        }
+
+        StringBuilder text = new StringBuilder();
+        int lines = 0;
+        for (String message : mPendingMessages) {
+            if (lines == MAX_LINES) {
+                text.append("\n…");
+                break;
+            }
+            if (lines > 0) {
+                text.append('\n');
+            }
+            text.append(message);
+            lines++;
+        }
+        mShownMessages.clear();
+        mShownMessages.addAll(mPendingMessages);
+        mPendingMessages.clear();
+
+        if (null != mToast) {
+            mToast.cancel();
+        }
+        mShownAt = SystemClock.uptimeMillis();
+        mToast = Toast.makeText(mContext, text, Toast.LENGTH_SHORT);
+        mToast.show();
+    }
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+}
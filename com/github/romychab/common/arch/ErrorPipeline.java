@@ -0,0 +1,124 @@
+package com.github.romychab.common.arch;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Filters errors of a presenter before they are delivered to a view.
+ *
+ * Equal errors (same class and message) are delivered only once within a time window,
+ * and stack traces are logged with a process-wide rate limit. So a burst of failures
+ * (e.g. when connectivity drops) doesn't flood the log and the view.
+ */
+public class ErrorPipeline {
+
+    public static final String TAG = ErrorPipeline.class.getSimpleName();
+
+    public static final long DEFAULT_WINDOW_MILLIS = 5000;
+
+    private static final int MAX_LOGGED_PER_WINDOW = 3; // full stack traces per window for the whole process
+    private static final int MAX_TRACKED_ERRORS = 32;
+
+    private static final Object sLogLock = new Object();
+    private static long sLogWindowStart;
+    private static int sLoggedInWindow;
+    private static int sSuppressedInWindow;
+
+    private final long mWindowMillis;
+
+    private final Map<String, Long> mRecentErrors = new HashMap<>();
+
+    public ErrorPipeline() {
+        this(DEFAULT_WINDOW_MILLIS);
+    }
+
+    /**
+     * @param windowMillis period of time during which equal errors are delivered only once
+     */
+    public ErrorPipeline(long windowMillis) {
+        mWindowMillis = windowMillis;
+    }
+
+    /**
+     * Log the error (if the log limit is not exceeded) and check whether it has to be delivered.
+     * May be called from any thread.
+     * @return TRUE if the error has to be delivered to the view, FALSE if the same error
+     *         has been delivered recently
+     */
+    public boolean submit(Throwable error) {
+        long now = SystemClock.uptimeMillis();
+        log(error, now);
+        return markDelivered(keyOf(error), now);
+    }
+
+    /**
+     * Forget all delivered errors, so the next error will be delivered in any case.
+     */
+    public synchronized void reset() {
+        mRecentErrors.clear();
+    }
+
+    // --- package
+
+    static String keyOf(Throwable error) {
+        String message = error.getMessage();
+        return null == message ? error.getClass().getName() : error.getClass().getName() + ": " + message;
+    }
+
+    // --- private
+
+    private synchronized boolean markDelivered(String key, long now) {
+        Long deliveredAt = mRecentErrors.get(key);
+        if (null != deliveredAt && now - deliveredAt < mWindowMillis) {
+            return false;
+        }
+        if (mRecentErrors.size() >= MAX_TRACKED_ERRORS) {
+            evictExpired(now);
+        }
+        mRecentErrors.put(key, now);
+        return true;
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Long> iterator = mRecentErrors.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next() >= mWindowMillis) {
+                iterator.remove();
+            }
+        }
+        if (mRecentErrors.size() >= MAX_TRACKED_ERRORS) {
+            // all errors are fresh and distinct; it's cheaper to start over than to grow
+            mRecentErrors.clear();
+        }
+    }
+
+    private static void log(Throwable error, long now) {
+        boolean logTrace;
+        int suppressed = 0;
+        synchronized (sLogLock) {
+            if (now - sLogWindowStart >= DEFAULT_WINDOW_MILLIS) {
+                suppressed = sSuppressedInWindow;
+                sLogWindowStart = now;
+                sLoggedInWindow = 0;
+                sSuppressedInWindow = 0;
+            }
+            logTrace = sLoggedInWindow < MAX_LOGGED_PER_WINDOW;
+            if (logTrace) {
+                sLoggedInWindow++;
+            }
+            else {
+                sSuppressedInWindow++;
+            }
+        }
+        if (suppressed > 0) {
+            Log.w(TAG, suppressed + " error(s) have not been logged due to the rate limit");
+        }
+        if (logTrace) {
+            Log.e(TAG, "Error!", error);
+        }
+    }
+}
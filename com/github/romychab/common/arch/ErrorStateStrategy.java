@@ -0,0 +1,55 @@
+package com.github.romychab.common.arch;
+
+import com.arellomobile.mvp.MvpView;
+import com.arellomobile.mvp.viewstate.ViewCommand;
+import com.arellomobile.mvp.viewstate.strategy.StateStrategy;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Strategy for {@link IBaseView#onError(Throwable)}.
+ *
+ * Like {@link com.arellomobile.mvp.viewstate.strategy.OneExecutionStateStrategy} each command is
+ * executed once, but errors waiting for a view are collapsed: an error replaces a waiting error
+ * with the same class and message, and at most {@link #MAX_PENDING_ERRORS} latest errors are kept.
+ */
+public class ErrorStateStrategy implements StateStrategy {
+
+    public static final int MAX_PENDING_ERRORS = 3;
+
+    @Override
+    public <View extends MvpView> void beforeApply(List<ViewCommand<View>> currentState, ViewCommand<View> incomingCommand) {
+        Throwable error = ViewCommandArguments.find(incomingCommand, Throwable.class);
+        String key = null == error ? null : ErrorPipeline.keyOf(error);
+
+        int pendingErrors = 0;
+        ViewCommand<View> oldest = null;
+        Iterator<ViewCommand<View>> iterator = currentState.iterator();
+        while (iterator.hasNext()) {
+            ViewCommand<View> command = iterator.next();
+            if (command.getStrategyType() != ErrorStateStrategy.class) {
+                continue;
+            }
+            Throwable pendingError = ViewCommandArguments.find(command, Throwable.class);
+            if (null != key && null != pendingError && key.equals(ErrorPipeline.keyOf(pendingError))) {
+                iterator.remove();
+                continue;
+            }
+            if (null == oldest) {
+                oldest = command;
+            }
+            pendingErrors++;
+        }
+
+        if (pendingErrors >= MAX_PENDING_ERRORS) {
+            currentState.remove(oldest);
+        }
+        currentState.add(incomingCommand);
+    }
+
+    @Override
+    public <View extends MvpView> void afterApply(List<ViewCommand<View>> currentState, ViewCommand<View> incomingCommand) {
+        currentState.remove(incomingCommand);
+    }
+}
@@ -5,7 +5,6 @@ import android.os.Parcelable;
 import android.support.annotation.Nullable;
 
 import com.arellomobile.mvp.MvpView;
-import com.arellomobile.mvp.viewstate.strategy.OneExecutionStateStrategy;
 import com.arellomobile.mvp.viewstate.strategy.StateStrategyType;
 
 public interface IBaseView extends MvpView {
@@ -18,6 +17,9 @@ public interface IBaseView extends MvpView {
         @Nullable
         String mMessage;
 
+        @Nullable
+        transient ProgressCell mCell; // not parcelled, lives only while the process is alive
+
         public static ProgressType withId(int type) {
             return withMessage(type, null);
         }
@@ -26,6 +28,15 @@ public interface IBaseView extends MvpView {
             return new ProgressType(type, message);
         }
 
+        /**
+         * Progress with a value that is sampled from the cell once per frame by renderers.
+         */
+        public static ProgressType determinate(int type, @Nullable String message, ProgressCell cell) {
+            ProgressType progressType = new ProgressType(type, message);
+            progressType.mCell = cell;
+            return progressType;
+        }
+
         ProgressType() {
         }
 
@@ -47,6 +58,11 @@ public interface IBaseView extends MvpView {
             return mMessage;
         }
 
+        @Nullable
+        public ProgressCell getCell() {
+            return mCell;
+        }
+
         @Override
         public int describeContents() { return 0; }
 
@@ -76,7 +92,7 @@ public interface IBaseView extends MvpView {
     /**
      * Called when some error occurs in presenter
      */
-    @StateStrategyType(value = OneExecutionStateStrategy.class)
+    @StateStrategyType(value = ErrorStateStrategy.class)
     void onError(Throwable error);
 
     /**
@@ -84,10 +100,10 @@ public interface IBaseView extends MvpView {
      * @param action what does view has to do with progress (hide, show or update)
      * @param progressType contains information about progress (now only ID and message are supported)
      */
-    @StateStrategyType(value = OneExecutionStateStrategy.class)
+    @StateStrategyType(value = ProgressStateStrategy.class)
     void setProgress(ProgressAction action, ProgressType progressType);
 
-    @StateStrategyType(value = OneExecutionStateStrategy.class)
+    @StateStrategyType(value = ProgressStateStrategy.class)
     void hideAllProgresses();
 
 }
@@ -9,4 +9,14 @@ public interface IDefaultProgressDialogHolder {
 
     void unregisterProgressCallback(ProgressDialogFragment.IProgressCallbacks callbacks);
 
+    /**
+     * Show progress with the specified ID by the renderer; progresses with a non-default ID
+     * are not shown until they have a renderer. Ignored by holders that don't support renderers.
+     */
+    default void registerProgressRenderer(int progressId, IProgressRenderer renderer) {
+    }
+
+    default void unregisterProgressRenderer(int progressId) {
+    }
+
 }
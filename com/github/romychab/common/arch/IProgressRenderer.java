@@ -0,0 +1,34 @@
+package com.github.romychab.common.arch;
+
+
+import com.github.romychab.common.arch.IBaseView.ProgressType;
+
+/**
+ * Displays progress of a long-running task to user.
+ * All methods are called from the main thread.
+ */
+public interface IProgressRenderer {
+
+    void show(ProgressType progressType);
+
+    void update(ProgressType progressType);
+
+    void hide();
+
+    /**
+     * Hide the progress immediately, without any delays or animations, e.g. when all progresses
+     * are reset or the progress has been cancelled by user.
+     */
+    default void cancel() {
+        hide();
+    }
+
+    /**
+     * Show a value of determinate progress; called at most once per frame while the value changes.
+     * Renderers start in indeterminate mode on every {@link #show(ProgressType)}, the value is
+     * delivered again after that. Ignored by default.
+     */
+    default void updateValue(long value, long max) {
+    }
+
+}
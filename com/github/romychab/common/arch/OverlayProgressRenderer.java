@@ -0,0 +1,138 @@
+package com.github.romychab.common.arch;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import com.github.romychab.common.R;
+import com.github.romychab.common.arch.IBaseView.ProgressType;
+import com.github.romychab.common.dialogs.ProgressDialogFragment;
+
+/**
+ * Shows progress in an overlay placed over the content of a screen.
+ *
+ * Unlike {@link DialogProgressRenderer} there are no fragment transactions and no new windows:
+ * views are created once and then just shown or hidden. The overlay blocks touches and may be
+ * cancelled by the back button (see {@link #onBackPressed()}); cancellation is reported as
+ * {@link ProgressDialogFragment.IProgressCallbacks#onProgressCancelled(String)} with
+ * {@link ProgressDialogFragment#TAG}, exactly like cancellation of the progress dialog.
+ */
+public class OverlayProgressRenderer implements IProgressRenderer {
+
+    private static final int OVERLAY_COLOR = 0x80000000;
+    private static final int DETERMINATE_WIDTH_DP = 200;
+
+    private Context mContext;
+    private ViewGroup mContainer;
+    private ProgressDialogFragment.IProgressCallbacks mCallbacks;
+
+    private FrameLayout mOverlay;
+    private ProgressBar mProgressBar;
+    private ProgressBar mDeterminateProgressBar;
+    private TextView mMessageView;
+
+    /**
+     * @param container view group in which overlay will be placed, usually it's a content frame
+     *                  of an activity (android.R.id.content)
+     * @param callbacks receiver of cancellation events
+     */
+    public OverlayProgressRenderer(Context context, ViewGroup container, ProgressDialogFragment.IProgressCallbacks callbacks) {
+        mContext = context;
+        mContainer = container;
+        mCallbacks = callbacks;
+        createViews();
+    }
+
+    @Override
+    public void show(ProgressType progressType) {
+        if (null == mOverlay.getParent()) {
+            // attached lazily because setContentView() removes all views from the content frame
+            mContainer.addView(mOverlay, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        }
+        else {
+            mOverlay.bringToFront();
+        }
+        mMessageView.setText(getMessage(progressType));
+        mProgressBar.setVisibility(View.VISIBLE);
+        mDeterminateProgressBar.setVisibility(View.GONE);
+        mOverlay.setVisibility(View.VISIBLE);
+    }
+
+    @Override
+    public void update(ProgressType progressType) {
+        mMessageView.setText(getMessage(progressType));
+    }
+
+    @Override
+    public void updateValue(long value, long max) {
+        mProgressBar.setVisibility(View.GONE);
+        mDeterminateProgressBar.setVisibility(View.VISIBLE);
+        mDeterminateProgressBar.setMax(ProgressCell.toIntMax(max));
+        mDeterminateProgressBar.setProgress(ProgressCell.toIntValue(value, max));
+    }
+
+    @Override
+    public void hide() {
+        mOverlay.setVisibility(View.GONE);
+    }
+
+    public boolean isShowing() {
+        return mOverlay.getVisibility() == View.VISIBLE && null != mOverlay.getParent();
+    }
+
+    /**
+     * Cancel the progress if it's visible.
+     * @return TRUE if the back press has been consumed
+     */
+    public boolean onBackPressed() {
+        if (!isShowing()) {
+            return false;
+        }
+        hide();
+        mCallbacks.onProgressCancelled(ProgressDialogFragment.TAG);
+        return true;
+    }
+
+    // --- protected
+
+    protected void createViews() {
+        mProgressBar = new ProgressBar(mContext);
+        mProgressBar.setIndeterminate(true);
+
+        mDeterminateProgressBar = new ProgressBar(mContext, null, android.R.attr.progressBarStyleHorizontal);
+        mDeterminateProgressBar.setVisibility(View.GONE);
+
+        mMessageView = new TextView(mContext);
+        mMessageView.setTextColor(Color.WHITE);
+        mMessageView.setGravity(Gravity.CENTER);
+
+        LinearLayout content = new LinearLayout(mContext);
+        content.setOrientation(LinearLayout.VERTICAL);
+        content.setGravity(Gravity.CENTER_HORIZONTAL);
+        content.addView(mProgressBar);
+        content.addView(mDeterminateProgressBar, new LinearLayout.LayoutParams(
+            (int) (mContext.getResources().getDisplayMetrics().density * DETERMINATE_WIDTH_DP),
+            ViewGroup.LayoutParams.WRAP_CONTENT));
+        content.addView(mMessageView);
+
+        mOverlay = new FrameLayout(mContext);
+        mOverlay.setBackgroundColor(OVERLAY_COLOR);
+        mOverlay.setClickable(true); // block touches to the content below
+        mOverlay.setVisibility(View.GONE);
+        mOverlay.addView(content, new FrameLayout.LayoutParams(
+            ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.CENTER));
+    }
+
+    // --- private
+
+    private String getMessage(ProgressType progressType) {
+        return null == progressType.getMessage() ? mContext.getString(R.string.waiting_message) : progressType.getMessage();
+    }
+}
@@ -0,0 +1,326 @@
+package com.github.romychab.common.arch;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.github.romychab.common.utils.handlers.IHandler;
+import com.github.romychab.common.utils.handlers.UiHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Debug tool for finding leaked presenters.
+ *
+ * Tracks all live {@link BasePresenter} instances through weak references and periodically
+ * reports presenters that:
+ * <ul>
+ *     <li>are still reachable a while after {@link BasePresenter#onDestroy()};</li>
+ *     <li>have had no attached view for too long;</li>
+ *     <li>hold too many disposables registered by {@link BasePresenter#registerDisposable(io.reactivex.disposables.Disposable)}.</li>
+ * </ul>
+ *
+ * The watchdog does nothing until {@link #install(Config)} is called, so install it in debug builds only:
+ *
+ * <pre>{@code
+ *
+ *   if (BuildConfig.DEBUG) {
+ *       PresenterWatchdog.install(new PresenterWatchdog.Config().setMaxDisposables(50));
+ *   }
+ *
+ * }</pre>
+ */
+public final class PresenterWatchdog {
+
+    public static final String TAG = PresenterWatchdog.class.getSimpleName();
+
+    // rough sizes used for estimations of memory retained by a presenter
+    private static final int PRESENTER_BYTES = 512;
+    private static final int DISPOSABLE_BYTES = 256;
+
+    private static volatile PresenterWatchdog sInstance;
+
+    private final Config mConfig;
+    private final IHandler mHandler;
+
+    private final Map<BasePresenter<?>, Entry> mEntries = new WeakHashMap<>();
+
+    private PresenterWatchdog(Config config, IHandler handler) {
+        mConfig = config;
+        mHandler = handler;
+    }
+
+    // --- public
+
+    /**
+     * Start tracking presenters created after this call.
+     */
+    public static synchronized void install(Config config) {
+        uninstall();
+        sInstance = new PresenterWatchdog(config, UiHandler.main());
+        sInstance.scheduleCheck();
+    }
+
+    public static synchronized void uninstall() {
+        if (null != sInstance) {
+            sInstance.mHandler.cancel(sInstance.mCheck);
+            sInstance = null;
+        }
+    }
+
+    public static boolean isInstalled() {
+        return null != sInstance;
+    }
+
+    /**
+     * Check tracked presenters right now.
+     * @return problems found; they are also passed to the reporter
+     */
+    public static List<Report> check() {
+        PresenterWatchdog watchdog = sInstance;
+        if (null == watchdog) {
+            return new ArrayList<>();
+        }
+        return watchdog.doCheck();
+    }
+
+    // --- hooks of BasePresenter; all of them are no-op if the watchdog is not installed
+
+    static void onCreated(BasePresenter<?> presenter) {
+        PresenterWatchdog watchdog = sInstance;
+        if (null == watchdog) {
+            return;
+        }
+        synchronized (watchdog.mEntries) {
+            watchdog.mEntries.put(presenter, new Entry(presenter.getClass().getName()));
+        }
+    }
+
+    static void onViewsChanged(BasePresenter<?> presenter) {
+        PresenterWatchdog watchdog = sInstance;
+        if (null == watchdog) {
+            return;
+        }
+        boolean hasViews = !presenter.getAttachedViews().isEmpty();
+        synchronized (watchdog.mEntries) {
+            Entry entry = watchdog.mEntries.get(presenter);
+            if (null != entry) {
+                entry.mDetachedAt = hasViews ? 0 : SystemClock.uptimeMillis();
+                entry.mReportedDetached = false;
+            }
+        }
+    }
+
+    static void onDestroyed(BasePresenter<?> presenter) {
+        PresenterWatchdog watchdog = sInstance;
+        if (null == watchdog) {
+            return;
+        }
+        synchronized (watchdog.mEntries) {
+            Entry entry = watchdog.mEntries.get(presenter);
+            if (null != entry) {
+                entry.mDestroyedAt = SystemClock.uptimeMillis();
+            }
+        }
+    }
+
+    // --- private
+
+    private void scheduleCheck() {
+        mHandler.postDelayed(mConfig.mCheckIntervalMillis, mCheck);
+    }
+
+    private List<Report> doCheck() {
+        long now = SystemClock.uptimeMillis();
+        List<Report> reports = new ArrayList<>();
+
+        if (hasDestroyedEntries(now)) {
+            // give GC a chance to collect destroyed presenters before blaming them
+            Runtime.getRuntime().gc();
+        }
+
+        synchronized (mEntries) {
+            for (Map.Entry<BasePresenter<?>, Entry> item : mEntries.entrySet()) {
+                BasePresenter<?> presenter = item.getKey();
+                Entry entry = item.getValue();
+                if (null == presenter) {
+                    continue;
+                }
+                int disposables = presenter.getRegisteredDisposablesCount();
+
+                if (entry.mDestroyedAt > 0) {
+                    if (!entry.mReportedLeak && now - entry.mDestroyedAt >= mConfig.mDestroyedGraceMillis) {
+                        entry.mReportedLeak = true;
+                        reports.add(new Report(Reason.LEAKED_AFTER_DESTROY, entry, disposables, now));
+                    }
+                    continue;
+                }
+                if (entry.mDetachedAt > 0 && !entry.mReportedDetached &&
+                        now - entry.mDetachedAt >= mConfig.mMaxDetachedMillis) {
+                    entry.mReportedDetached = true;
+                    reports.add(new Report(Reason.OUTLIVED_VIEW, entry, disposables, now));
+                }
+                if (disposables > entry.mReportedDisposables && disposables >= mConfig.mMaxDisposables) {
+                    // report again only if the number keeps growing twice as much
+                    entry.mReportedDisposables = disposables * 2;
+                    reports.add(new Report(Reason.TOO_MANY_DISPOSABLES, entry, disposables, now));
+                }
+            }
+        }
+
+        for (Report report : reports) {
+            mConfig.mReporter.onReport(report);
+        }
+        return reports;
+    }
+
+    private boolean hasDestroyedEntries(long now) {
+        synchronized (mEntries) {
+            for (Entry entry : mEntries.values()) {
+                if (entry.mDestroyedAt > 0 && !entry.mReportedLeak &&
+                        now - entry.mDestroyedAt >= mConfig.mDestroyedGraceMillis) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private final Runnable mCheck = new Runnable() {
+        @Override
+        public void run() {
+            doCheck();
+            if (sInstance == PresenterWatchdog.this) {
+                scheduleCheck();
+            }
+        }
+    };
+
+    // ---
+
+    private static class Entry {
+        final String mPresenterClass;
+        final long mCreatedAt = SystemClock.uptimeMillis();
+        long mDetachedAt;
+        long mDestroyedAt;
+        int mReportedDisposables;
+        boolean mReportedDetached;
+        boolean mReportedLeak;
+
+        Entry(String presenterClass) {
+            mPresenterClass = presenterClass;
+        }
+    }
+
+    public enum Reason {
+        LEAKED_AFTER_DESTROY,
+        OUTLIVED_VIEW,
+        TOO_MANY_DISPOSABLES
+    }
+
+    public static class Report {
+
+        public final Reason mReason;
+
+        public final String mPresenterClass;
+
+        public final int mDisposables;
+
+        public final long mAgeMillis;
+
+        /**
+         * How long the presenter has no views or has been destroyed, 0 if not applicable
+         */
+        public final long mIdleMillis;
+
+        /**
+         * Rough estimation of memory retained by the presenter and its disposables (in bytes)
+         */
+        public final long mRetainedBytesEstimate;
+
+        Report(Reason reason, Entry entry, int disposables, long now) {
+            mReason = reason;
+            mPresenterClass = entry.mPresenterClass;
+            mDisposables = disposables;
+            mAgeMillis = now - entry.mCreatedAt;
+            long idleSince = entry.mDestroyedAt > 0 ? entry.mDestroyedAt : entry.mDetachedAt;
+            mIdleMillis = idleSince > 0 ? now - idleSince : 0;
+            mRetainedBytesEstimate = PRESENTER_BYTES + (long) disposables * DISPOSABLE_BYTES;
+        }
+
+        @Override
+        public String toString() {
+            return mReason + ": " + mPresenterClass +
+                " (disposables=" + mDisposables +
+                ", age=" + mAgeMillis + "ms" +
+                ", idle=" + mIdleMillis + "ms" +
+                ", retained~" + (mRetainedBytesEstimate / 1024) + "KB)";
+        }
+    }
+
+    public interface IReporter {
+        void onReport(Report report);
+    }
+
+    private static final IReporter LOG_REPORTER = new IReporter() {
+        @Override
+        public void onReport(Report report) {
+            Log.w(TAG, report.toString());
+        }
+    };
+
+    public static class Config {
+
+        long mCheckIntervalMillis = 10000;
+
+        long mMaxDetachedMillis = 60000;
+
+        long mDestroyedGraceMillis = 10000;
+
+        int mMaxDisposables = 100;
+
+        IReporter mReporter = LOG_REPORTER;
+
+        /**
+         * @param checkIntervalMillis how often presenters are checked
+         */
+        public Config setCheckInterval(long checkIntervalMillis) {
+            mCheckIntervalMillis = checkIntervalMillis;
+            return this;
+        }
+
+        /**
+         * @param maxDetachedMillis how long a presenter may live without views
+         */
+        public Config setMaxDetachedTime(long maxDetachedMillis) {
+            mMaxDetachedMillis = maxDetachedMillis;
+            return this;
+        }
+
+        /**
+         * @param destroyedGraceMillis how long a destroyed presenter may stay reachable
+         */
+        public Config setDestroyedGraceTime(long destroyedGraceMillis) {
+            mDestroyedGraceMillis = destroyedGraceMillis;
+            return this;
+        }
+
+        /**
+         * @param maxDisposables max number of registered disposables
+         */
+        public Config setMaxDisposables(int maxDisposables) {
+            mMaxDisposables = maxDisposables;
+            return this;
+        }
+
+        /**
+         * @param reporter receiver of reports; problems are written to the log by default
+         */
+        public Config setReporter(IReporter reporter) {
+            mReporter = reporter;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.romychab.common.arch;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free holder of a determinate progress value.
+ * It may be written from any thread as often as needed; the UI reads it once per frame,
+ * so writers never post messages to the main thread.
+ */
+public class ProgressCell {
+
+    private final AtomicLong mValue = new AtomicLong();
+
+    private final long mMax;
+
+    public ProgressCell(long max) {
+        mMax = max;
+    }
+
+    public void set(long value) {
+        mValue.lazySet(value);
+    }
+
+    public long get() {
+        return mValue.get();
+    }
+
+    public long getMax() {
+        return mMax;
+    }
+
+    /**
+     * Convert a value to int range of {@link android.widget.ProgressBar}.
+     */
+    public static int toIntValue(long value, long max) {
+        if (max <= Integer.MAX_VALUE) {
+            return (int) Math.max(0, Math.min(value, max));
+        }
+        return (int) (Math.max(0, Math.min(value, max)) * Integer.MAX_VALUE / max);
+    }
+
+    /**
+     * Convert a max value to int range of {@link android.widget.ProgressBar}.
+     */
+    public static int toIntMax(long max) {
+        return (int) Math.min(max, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,197 @@
+package com.github.romychab.common.arch;
+
+import android.util.SparseArray;
+import android.view.Choreographer;
+
+import com.github.romychab.common.arch.IBaseView.ProgressAction;
+import com.github.romychab.common.arch.IBaseView.ProgressType;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Maps IDs of {@link ProgressType} to renderers, so independent operations may show their own
+ * progresses (inline spinners, toolbar indicators, dialogs etc.) at the same time.
+ *
+ * The registry remembers active progresses, so a renderer registered while its progress
+ * is active (e.g. a view created after the progress has started) is shown immediately.
+ * Values of determinate progresses ({@link ProgressType#getCell()}) are sampled once per frame
+ * while they are active. Updates without a cell (e.g. a new message) keep sampling the current cell;
+ * if several operations share an ID, the cell of the latest started one is sampled.
+ *
+ * The renderer of {@link ProgressType#DEFAULT} is kept separately: a renderer registered for the
+ * default ID overrides it until it's unregistered.
+ * Must be used from the main thread.
+ */
+public class ProgressRegistry {
+
+    private static final int DEFAULT_ID = ProgressType.DEFAULT.getId();
+
+    private IProgressRenderer mDefaultRenderer;
+
+    private final SparseArray<IProgressRenderer> mRenderers = new SparseArray<>();
+
+    private final SparseArray<ProgressType> mActiveProgresses = new SparseArray<>();
+
+    private final SparseArray<Sample> mSamples = new SparseArray<>();
+    private boolean mSamplingScheduled = false;
+
+    /**
+     * Set the renderer used for the default progress when no other renderer is registered for it.
+     * The previous default renderer is not touched, the caller is responsible for hiding it.
+     */
+    public void setDefaultRenderer(IProgressRenderer renderer) {
+        mDefaultRenderer = renderer;
+        if (null == mRenderers.get(DEFAULT_ID)) {
+            onRendererChanged(DEFAULT_ID, renderer);
+        }
+    }
+
+    public void register(int progressId, IProgressRenderer renderer) {
+        IProgressRenderer previous = get(progressId);
+        mRenderers.put(progressId, renderer);
+        if (null != previous && previous != renderer && null != mActiveProgresses.get(progressId)) {
+            previous.cancel(); // the progress moves to the new renderer
+        }
+        onRendererChanged(progressId, renderer);
+    }
+
+    /**
+     * Remove the renderer; the default progress goes back to the default renderer.
+     */
+    public void unregister(int progressId) {
+        IProgressRenderer removed = mRenderers.get(progressId);
+        mRenderers.remove(progressId);
+        IProgressRenderer renderer = get(progressId);
+        if (null != removed && null != renderer && null != mActiveProgresses.get(progressId)) {
+            removed.cancel();
+            onRendererChanged(progressId, renderer);
+        }
+    }
+
+    public IProgressRenderer get(int progressId) {
+        IProgressRenderer renderer = mRenderers.get(progressId);
+        return null == renderer && progressId == DEFAULT_ID ? mDefaultRenderer : renderer;
+    }
+
+    public void setProgress(ProgressAction action, ProgressType progressType) {
+        int id = progressType.getId();
+        if (action == ProgressAction.HIDE) {
+            mActiveProgresses.remove(id);
+            mSamples.remove(id);
+        }
+        else {
+            mActiveProgresses.put(id, progressType);
+            startSampling(id, progressType.getCell());
+        }
+
+        IProgressRenderer renderer = get(id);
+        if (null == renderer) {
+            return;
+        }
+        switch (action) {
+            case SHOW:
+                renderer.show(progressType);
+                onValueReset(id);
+                break;
+            case HIDE:
+                renderer.hide();
+                break;
+            case UPDATE:
+                renderer.update(progressType);
+                break;
+        }
+    }
+
+    public void hideAll() {
+        mActiveProgresses.clear();
+        mSamples.clear();
+        for (int i = 0; i < mRenderers.size(); i++) {
+            mRenderers.valueAt(i).cancel();
+        }
+        if (null != mDefaultRenderer) {
+            mDefaultRenderer.cancel();
+        }
+    }
+
+    /**
+     * Stop sampling of determinate progresses, e.g. when the screen is destroyed.
+     */
+    public void release() {
+        mSamples.clear();
+        if (mSamplingScheduled) {
+            mSamplingScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(mSampleFrame);
+        }
+    }
+
+    // --- private
+
+    private void onRendererChanged(int progressId, IProgressRenderer renderer) {
+        ProgressType activeProgress = mActiveProgresses.get(progressId);
+        if (null != activeProgress) {
+            renderer.show(activeProgress);
+        }
+        onValueReset(progressId);
+    }
+
+    private void onValueReset(int progressId) {
+        Sample sample = mSamples.get(progressId);
+        if (null != sample) {
+            sample.mRendered = false; // the renderer has to receive the value again
+        }
+    }
+
+    private void startSampling(int progressId, ProgressCell cell) {
+        if (null == cell) {
+            return; // keep sampling the current cell, if any
+        }
+        Sample sample = mSamples.get(progressId);
+        if (null == sample) {
+            sample = new Sample();
+            mSamples.put(progressId, sample);
+        }
+        if (sample.mSeenCells.add(cell)) {
+            // a new operation; cells seen before come with updates of older ones, e.g. when they finish
+            sample.mCell = cell;
+            sample.mRendered = false;
+        }
+        if (!mSamplingScheduled) {
+            mSamplingScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mSampleFrame);
+        }
+    }
+
+    private void sample() {
+        mSamplingScheduled = false;
+        for (int i = 0; i < mSamples.size(); i++) {
+            Sample sample = mSamples.valueAt(i);
+            IProgressRenderer renderer = get(mSamples.keyAt(i));
+            long value = sample.mCell.get();
+            if (null != renderer && (!sample.mRendered || value != sample.mValue)) {
+                sample.mValue = value;
+                sample.mRendered = true;
+                renderer.updateValue(value, sample.mCell.getMax());
+            }
+        }
+        if (mSamples.size() > 0) {
+            mSamplingScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mSampleFrame);
+        }
+    }
+
+    private final Choreographer.FrameCallback mSampleFrame = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            sample();
+        }
+    };
+
+    private static class Sample {
+        final Set<ProgressCell> mSeenCells = Collections.newSetFromMap(new IdentityHashMap<ProgressCell, Boolean>());
+        ProgressCell mCell;
+        long mValue;
+        boolean mRendered;
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.romychab.common.arch;
+
+import com.arellomobile.mvp.MvpView;
+import com.arellomobile.mvp.viewstate.ViewCommand;
+import com.arellomobile.mvp.viewstate.strategy.StateStrategy;
+import com.github.romychab.common.arch.IBaseView.ProgressAction;
+import com.github.romychab.common.arch.IBaseView.ProgressType;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Strategy for {@link IBaseView#setProgress(ProgressAction, ProgressType)} and
+ * {@link IBaseView#hideAllProgresses()}.
+ *
+ * Like {@link com.arellomobile.mvp.viewstate.strategy.OneExecutionStateStrategy} each command is
+ * executed once, but commands waiting for a view are coalesced per progress ID:
+ * <ul>
+ *     <li>UPDATE replaces a previous UPDATE;</li>
+ *     <li>HIDE cancels a SHOW that has not been executed yet (with its UPDATEs);</li>
+ *     <li>hideAllProgresses() replaces all waiting progress commands.</li>
+ * </ul>
+ * So the queue holds at most 3 commands per progress ID (HIDE of a progress shown earlier,
+ * SHOW and the latest UPDATE) however many commands were issued while the view was detached.
+ */
+public class ProgressStateStrategy implements StateStrategy {
+
+    @Override
+    public <View extends MvpView> void beforeApply(List<ViewCommand<View>> currentState, ViewCommand<View> incomingCommand) {
+        ProgressType progressType = ViewCommandArguments.find(incomingCommand, ProgressType.class);
+        if (null == progressType) {
+            // hideAllProgresses(): nothing of the waiting progress commands makes sense after it
+            Iterator<ViewCommand<View>> iterator = currentState.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getStrategyType() == ProgressStateStrategy.class) {
+                    iterator.remove();
+                }
+            }
+            currentState.add(incomingCommand);
+            return;
+        }
+
+        ProgressAction action = ViewCommandArguments.find(incomingCommand, ProgressAction.class);
+        boolean showCancelled = false;
+        boolean hidePending = false;
+        Iterator<ViewCommand<View>> iterator = currentState.iterator();
+        while (iterator.hasNext()) {
+            ViewCommand<View> command = iterator.next();
+            if (command.getStrategyType() != ProgressStateStrategy.class) {
+                continue;
+            }
+            ProgressType pendingType = ViewCommandArguments.find(command, ProgressType.class);
+            if (null == pendingType || pendingType.getId() != progressType.getId()) {
+                continue;
+            }
+            ProgressAction pendingAction = ViewCommandArguments.find(command, ProgressAction.class);
+            if (pendingAction == ProgressAction.UPDATE && action != ProgressAction.HIDE) {
+                iterator.remove();
+            }
+            else if (action == ProgressAction.HIDE) {
+                if (pendingAction == ProgressAction.SHOW) {
+                    showCancelled = true;
+                }
+                if (pendingAction == ProgressAction.HIDE) {
+                    hidePending = true;
+                }
+                else {
+                    iterator.remove();
+                }
+            }
+        }
+
+        if (action == ProgressAction.HIDE && (showCancelled || hidePending)) {
+            // the progress has never been shown to the view or it's already going to be hidden
+            return;
+        }
+        currentState.add(incomingCommand);
+    }
+
+    @Override
+    public <View extends MvpView> void afterApply(List<ViewCommand<View>> currentState, ViewCommand<View> incomingCommand) {
+        currentState.remove(incomingCommand);
+    }
+}
@@ -5,15 +5,23 @@ import com.github.romychab.common.utils.handlers.IHandler;
 import java.util.concurrent.TimeUnit;
 
 import io.reactivex.Scheduler;
+import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.disposables.Disposables;
 import io.reactivex.plugins.RxJavaPlugins;
 
 
+/**
+ * Scheduler of a single presenter.
+ * Any number of instances may share one handler (e.g. {@link com.github.romychab.common.utils.handlers.UiHandler#main()}),
+ * runnables of each instance are tagged, so they can be cancelled without affecting other instances.
+ */
 public class SafeScheduler extends Scheduler {
 
     private final IHandler handler;
 
+    private final CompositeDisposable workers = new CompositeDisposable();
+
     SafeScheduler(IHandler handler) {
         this.handler = handler;
     }
@@ -25,22 +33,35 @@ public class SafeScheduler extends Scheduler {
 
         run = RxJavaPlugins.onSchedule(run);
         ScheduledRunnable scheduled = new ScheduledRunnable(handler, run);
-        handler.postDelayed(Math.max(0L, unit.toMillis(delay)), scheduled);
+        handler.postDelayed(Math.max(0L, unit.toMillis(delay)), scheduled, this);
         return scheduled;
     }
 
     @Override
     public Worker createWorker() {
-        return new SafeWorker(handler);
+        SafeWorker worker = new SafeWorker(handler, workers);
+        workers.add(worker);
+        return worker;
+    }
+
+    /**
+     * Cancel all runnables scheduled by this instance and dispose its workers.
+     * The scheduler stays usable after this call.
+     */
+    public void cancelAll() {
+        workers.clear();
+        handler.cancel((Object) this);
     }
 
     private static final class SafeWorker extends Worker {
         private final IHandler handler;
+        private final CompositeDisposable parent;
 
         private volatile boolean disposed;
 
-        SafeWorker(IHandler handler) {
+        SafeWorker(IHandler handler, CompositeDisposable parent) {
             this.handler = handler;
+            this.parent = parent;
         }
 
         @Override
@@ -70,8 +91,11 @@ public class SafeScheduler extends Scheduler {
 
         @Override
         public void dispose() {
-            disposed = true;
-            handler.cancel(this);
+            if (!disposed) {
+                disposed = true;
+                handler.cancel(this);
+                parent.delete(this);
+            }
         }
 
         @Override
@@ -0,0 +1,55 @@
+package com.github.romychab.common.arch;
+
+import com.arellomobile.mvp.viewstate.ViewCommand;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Access to arguments of view commands generated by Moxy.
+ * Generated commands keep method arguments in fields, this class looks them up by type.
+ * Fields are resolved once per command class.
+ */
+class ViewCommandArguments {
+
+    private static final Map<Class<?>, Field[]> sFields = new HashMap<>();
+
+    /**
+     * @return the first argument of the specified type or NULL if the command has no such argument
+     */
+    static <T> T find(ViewCommand<?> command, Class<T> type) {
+        for (Field field : getFields(command.getClass())) {
+            if (type.isAssignableFrom(field.getType())) {
+                try {
+                    return type.cast(field.get(command));
+                } catch (IllegalAccessException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Field[] getFields(Class<?> commandClass) {
+        synchronized (sFields) {
+            Field[] fields = sFields.get(commandClass);
+            if (null == fields) {
+                List<Field> instanceFields = new ArrayList<>();
+                for (Field field : commandClass.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        field.setAccessible(true);
+                        instanceFields.add(field);
+                    }
+                }
+                fields = instanceFields.toArray(new Field[instanceFields.size()]);
+                sFields.put(commandClass, fields);
+            }
+            return fields;
+        }
+    }
+
+}
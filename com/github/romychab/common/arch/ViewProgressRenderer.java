@@ -0,0 +1,82 @@
+package com.github.romychab.common.arch;
+
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import com.github.romychab.common.arch.IBaseView.ProgressType;
+
+/**
+ * Shows progress by changing visibility of a view, e.g. an inline spinner or an indicator
+ * in a toolbar. Doesn't block user interaction.
+ */
+public class ViewProgressRenderer implements IProgressRenderer {
+
+    private View mIndicator;
+
+    @Nullable
+    private TextView mMessageView;
+
+    private int mHiddenVisibility;
+
+    public ViewProgressRenderer(View indicator) {
+        this(indicator, null, View.GONE);
+    }
+
+    /**
+     * @param indicator view that is visible while progress is active
+     * @param messageView optional view for messages of progress
+     * @param hiddenVisibility visibility of the indicator when progress is not active ({@link View#GONE}
+     *                         or {@link View#INVISIBLE})
+     */
+    public ViewProgressRenderer(View indicator, @Nullable TextView messageView, int hiddenVisibility) {
+        mIndicator = indicator;
+        mMessageView = messageView;
+        mHiddenVisibility = hiddenVisibility;
+    }
+
+    @Override
+    public void show(ProgressType progressType) {
+        resetIndeterminate();
+        mIndicator.setVisibility(View.VISIBLE);
+        update(progressType);
+    }
+
+    @Override
+    public void update(ProgressType progressType) {
+        if (null != mMessageView) {
+            String message = progressType.getMessage();
+            mMessageView.setText(message);
+            mMessageView.setVisibility(TextUtils.isEmpty(message) ? mHiddenVisibility : View.VISIBLE);
+        }
+    }
+
+    @Override
+    public void updateValue(long value, long max) {
+        if (mIndicator instanceof ProgressBar) {
+            ProgressBar progressBar = (ProgressBar) mIndicator;
+            progressBar.setIndeterminate(false);
+            progressBar.setMax(ProgressCell.toIntMax(max));
+            progressBar.setProgress(ProgressCell.toIntValue(value, max));
+        }
+    }
+
+    @Override
+    public void hide() {
+        mIndicator.setVisibility(mHiddenVisibility);
+        resetIndeterminate();
+        if (null != mMessageView) {
+            mMessageView.setVisibility(mHiddenVisibility);
+        }
+    }
+
+    // --- private
+
+    private void resetIndeterminate() {
+        if (mIndicator instanceof ProgressBar) {
+            ((ProgressBar) mIndicator).setIndeterminate(true);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.github.romychab.common.camera;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.TreeMap;
+
+/**
+ * Pool of mutable bitmaps reused by the image pipeline for decoding (see BitmapFactory.Options#inBitmap)
+ * and as targets of transformations, so processing photos one after another doesn't allocate
+ * several large bitmaps per photo.
+ *
+ * Bitmaps are grouped into buckets by their allocation size. Starting with API 19 a bitmap
+ * may be reused for any smaller size; on older versions only for the same size and config.
+ * The total size of pooled bitmaps is limited by a byte budget; the least recently pooled
+ * bitmaps are recycled first. {@link ImageProcessingEngine} clears the shared pool when it becomes idle.
+ *
+ * Thread-safe.
+ */
+public class BitmapPool {
+
+    public static final String TAG = BitmapPool.class.getSimpleName();
+
+    // don't reuse bitmaps much larger than requested, they are more useful for large requests
+    private static final int MAX_SIZE_MULTIPLIER = 2;
+
+    private final TreeMap<Long, ArrayDeque<Bitmap>> mBuckets = new TreeMap<>();
+    private final ArrayDeque<Bitmap> mOrder = new ArrayDeque<>(); // the least recently pooled goes first
+
+    private long mMaxBytes;
+    private long mBytes;
+
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+
+    public static BitmapPool getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * @param maxBytes max total size of pooled bitmaps
+     */
+    public BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    // --- public
+
+    /**
+     * @return a pooled bitmap configured to the requested size or NULL if there is no suitable bitmap;
+     *         the content of the bitmap is undefined
+     */
+    @Nullable
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        long bytes = bytesOf(width, height, config);
+        Bitmap bitmap = Build.VERSION.SDK_INT >= 19 ?
+                findReconfigurable(width, height, config, bytes) :
+                findExact(width, height, config, bytes);
+        if (null == bitmap) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        return bitmap;
+    }
+
+    /**
+     * Give the bitmap to the pool; the caller must not use it anymore.
+     * Bitmaps that can't be reused are recycled.
+     */
+    public synchronized void put(@Nullable Bitmap bitmap) {
+        if (null == bitmap || bitmap.isRecycled()) {
+            return;
+        }
+        long bytes = sizeOf(bitmap);
+        if (!bitmap.isMutable() || bytes > mMaxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        ArrayDeque<Bitmap> bucket = mBuckets.get(bytes);
+        if (null == bucket) {
+            bucket = new ArrayDeque<>();
+            mBuckets.put(bytes, bucket);
+        }
+        bucket.addLast(bitmap);
+        mOrder.addLast(bitmap);
+        mBytes += bytes;
+        trimToSize(mMaxBytes);
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        mMaxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    /**
+     * Release pooled bitmaps according to the level passed to ComponentCallbacks2#onTrimMemory(int).
+     */
+    public synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE ||
+                level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimToSize(0);
+        }
+        else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(mMaxBytes / 2);
+        }
+    }
+
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    // --- statistics
+
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return mEvictions;
+    }
+
+    public synchronized long getSizeBytes() {
+        return mBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return TAG + "{size=" + (mBytes / 1024) + "KB, max=" + (mMaxBytes / 1024) + "KB, hits=" + mHits +
+            ", misses=" + mMisses + ", evictions=" + mEvictions + "}";
+    }
+
+    // --- private
+
+    @TargetApi(19)
+    private Bitmap findReconfigurable(int width, int height, Bitmap.Config config, long bytes) {
+        Long key = mBuckets.ceilingKey(bytes);
+        if (null == key || key > bytes * MAX_SIZE_MULTIPLIER) {
+            return null;
+        }
+        Bitmap bitmap = remove(key, mBuckets.get(key).peekFirst());
+        bitmap.reconfigure(width, height, config);
+        return bitmap;
+    }
+
+    private Bitmap findExact(int width, int height, Bitmap.Config config, long bytes) {
+        ArrayDeque<Bitmap> bucket = mBuckets.get(bytes);
+        if (null == bucket) {
+            return null;
+        }
+        for (Bitmap bitmap : bucket) {
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                return remove(bytes, bitmap);
+            }
+        }
+        return null;
+    }
+
+    private Bitmap remove(long bytes, Bitmap bitmap) {
+        ArrayDeque<Bitmap> bucket = mBuckets.get(bytes);
+        bucket.remove(bitmap);
+        if (bucket.isEmpty()) {
+            mBuckets.remove(bytes);
+        }
+        mOrder.remove(bitmap);
+        mBytes -= bytes;
+        return bitmap;
+    }
+
+    private void trimToSize(long maxBytes) {
+        Iterator<Bitmap> iterator = mOrder.iterator();
+        while (mBytes > maxBytes && iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            iterator.remove();
+            long bytes = sizeOf(bitmap);
+            ArrayDeque<Bitmap> bucket = mBuckets.get(bytes);
+            bucket.remove(bitmap);
+            if (bucket.isEmpty()) {
+                mBuckets.remove(bytes);
+            }
+            mBytes -= bytes;
+            mEvictions++;
+            bitmap.recycle();
+        }
+    }
+
+    private static long sizeOf(Bitmap bitmap) {
+        return Build.VERSION.SDK_INT >= 19 ? bitmap.getAllocationByteCount() : bitmap.getByteCount();
+    }
+
+    static long bytesOf(int width, int height, Bitmap.Config config) {
+        int bytesPerPixel = config == Bitmap.Config.ARGB_8888 ? 4 : (config == Bitmap.Config.ALPHA_8 ? 1 : 2);
+        return (long) width * height * bytesPerPixel;
+    }
+
+    private static final class InstanceHolder {
+        static final BitmapPool INSTANCE = new BitmapPool(Runtime.getRuntime().maxMemory() / 8);
+    }
+}
@@ -20,6 +20,8 @@ import android.support.v4.content.FileProvider;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.github.romychab.common.utils.targets.TargetResolver;
+
 import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -27,12 +29,16 @@ import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 
+import io.reactivex.disposables.Disposable;
+
 /**
  * Capture photos using camera.
  * Photos are saved in dir returned by getContext().getExternalFilesDir(Environment.DIRECTORY_PICTURES) if
  * the parameter 'targetFile' is NULL in {@link #newInstance(PhotoOptions)} )};
  *
- * To capture photo use {@link #requestPhoto()} method.
+ * To capture photo use {@link #requestPhoto()} method. Photos may be captured one after another without
+ * waiting for the processing: they are queued and processed in the background (at most 2 at the same time).
+ * Implement {@link ICaptureQueueCallbacks} to track the state of each photo and the progress of the queue.
  * But if app needs only thumbnails it's better to use {@link #requestThumbnail()} method.
  *
  * If you want to save photo in a file on external storage in non-app folder than you need to request
@@ -124,10 +130,22 @@ public class CameraFragment extends Fragment {
     private static final String ARG_TARGET_FILE = "FILE";
     private static final String ARG_TARGET_FRAGMENT = "TARGET";
     private static final String ARG_DETECT_ROTATION = "ROTATION";
+    private static final String ARG_ROTATION_MODE = "ROTATION_MODE";
+    private static final String ARG_DECODE_CONFIG = "DECODE_CONFIG";
+    private static final String ARG_OUTPUT_FORMAT = "OUTPUT_FORMAT";
+    private static final String ARG_QUALITY = "QUALITY";
+    private static final String ARG_TARGET_SIZE = "TARGET_SIZE";
+    private static final String ARG_DERIVATIVE_SUFFIXES = "DERIVATIVE_SUFFIXES";
+    private static final String ARG_DERIVATIVE_DIMENSIONS = "DERIVATIVE_DIMENSIONS";
+    private static final String ARG_DERIVATIVE_QUALITIES = "DERIVATIVE_QUALITIES";
 
     private static final String KEY_IMAGE_FILE = "IMAGE_FILE";
     private static final String KEY_PERMISSIONS = "PERMISSIONS";
     private static final String KEY_ACTION = "ACTION";
+    private static final String KEY_QUEUE_FILES = "QUEUE_FILES";
+    private static final String KEY_QUEUE_STATES = "QUEUE_STATES";
+
+    private static final int MAX_PARALLEL_PROCESSING = 2; // photos of the queue processed at the same time
 
     private static final int RQ_PERMISSIONS = 0x14; // request code for acquiring permissions
     private static final int RQ_CAMERA_INTENT = 0x4; // request code for camera intent
@@ -138,9 +156,14 @@ public class CameraFragment extends Fragment {
 
     private File mImageFile; // file in which captured image will be places
 
-    private IPhotoCallbacks mPhotoCallback; // target activity/fragment that implements IPhotoCallbacks interface
+    // finds target activity/fragment that implements IPhotoCallbacks interface
+    private final TargetResolver<IPhotoCallbacks> mTargetResolver =
+            TargetResolver.of(this, IPhotoCallbacks.class, EMPTY_CALLBACK);
+
+    private final List<CaptureItem> mQueue = new ArrayList<>(); // captured photos of the current batch
+    private boolean mBatchProcessing; // onStartPhotoProcessing() has been delivered for the current batch
 
-    private ProcessImageTask mResizePhotoTask; // task for processing captured image, may be NULL
+    private boolean mDestroyed = false;
 
     private ArrayList<String> mPermissions = new ArrayList<>();
 
@@ -158,6 +181,24 @@ public class CameraFragment extends Fragment {
         args.putString(ARG_TARGET_FILE, photoOptions.mTargetImageFile);
         args.putString(ARG_TARGET_FRAGMENT, photoOptions.mTargetFragmentTag);
         args.putBoolean(ARG_DETECT_ROTATION, photoOptions.mDetectRotation);
+        args.putInt(ARG_ROTATION_MODE, photoOptions.mRotationMode);
+        args.putInt(ARG_DECODE_CONFIG, photoOptions.mDecodeConfig);
+        args.putInt(ARG_OUTPUT_FORMAT, photoOptions.mOutputFormat);
+        args.putInt(ARG_QUALITY, photoOptions.mQuality);
+        args.putLong(ARG_TARGET_SIZE, photoOptions.mTargetBytes);
+        int derivatives = photoOptions.mDerivatives.size();
+        String[] suffixes = new String[derivatives];
+        int[] dimensions = new int[derivatives];
+        int[] qualities = new int[derivatives];
+        for (int i = 0; i < derivatives; i++) {
+            PhotoOptions.Derivative derivative = photoOptions.mDerivatives.get(i);
+            suffixes[i] = derivative.mSuffix;
+            dimensions[i] = derivative.mMaxDimension;
+            qualities[i] = derivative.mQuality;
+        }
+        args.putStringArray(ARG_DERIVATIVE_SUFFIXES, suffixes);
+        args.putIntArray(ARG_DERIVATIVE_DIMENSIONS, dimensions);
+        args.putIntArray(ARG_DERIVATIVE_QUALITIES, qualities);
         CameraFragment fragment = new CameraFragment();
         fragment.setArguments(args);
         return fragment;
@@ -177,9 +218,17 @@ public class CameraFragment extends Fragment {
             }
             mPermissions = savedInstanceState.getStringArrayList(KEY_PERMISSIONS);
             mAction = savedInstanceState.getInt(KEY_ACTION, 0);
+            restoreQueue(savedInstanceState);
         }
     }
 
+    @Override
+    public void onActivityCreated(@Nullable Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+        // the target of callbacks is available now; continue processing of a restored queue
+        processQueue();
+    }
+
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -188,13 +237,29 @@ public class CameraFragment extends Fragment {
         }
         outState.putStringArrayList(KEY_PERMISSIONS, mPermissions);
         outState.putInt(KEY_ACTION, mAction);
+        saveQueue(outState);
+    }
+
+    @Override
+    public void onDetach() {
+        super.onDetach();
+        mTargetResolver.invalidate(); // the fragment is retained, so the target will be another instance
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        BitmapPool.getInstance().trimMemory(level);
     }
 
     @Override
     public void onDestroy() {
-        // fragment is going to be destroyed, so let's cancel the processing task and delete captured file
-        if (null != mResizePhotoTask) {
-            mResizePhotoTask.cancel(false);
+        // fragment is going to be destroyed, so let's cancel the processing tasks
+        mDestroyed = true;
+        for (CaptureItem item : mQueue) {
+            if (null != item.mProcessing) {
+                item.mProcessing.dispose();
+            }
         }
         super.onDestroy();
     }
@@ -218,8 +283,7 @@ public class CameraFragment extends Fragment {
         super.onActivityResult(requestCode, resultCode, data);
         if (requestCode == RQ_CAMERA_INTENT && resultCode == Activity.RESULT_OK) {
             // the captured image must be resized
-            mResizePhotoTask = new ProcessImageTask(mImageFile, getMaxDimension(), isDetectRotation(), getCallback());
-            mResizePhotoTask.execute();
+            enqueue(mImageFile);
         }
         else if (requestCode == RQ_CAMERA_THUMBNAIL_INTENT && resultCode == Activity.RESULT_OK) {
             Bundle extras = data.getExtras();
@@ -292,11 +356,118 @@ public class CameraFragment extends Fragment {
         }
     }
 
+    /**
+     * @return number of captured photos which are not processed yet
+     */
+    public int getPendingCount() {
+        int pending = 0;
+        for (CaptureItem item : mQueue) {
+            if (!item.isFinished()) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
     // --- private
 
+    private void enqueue(File photoFile) {
+        if (getPendingCount() == 0) {
+            mQueue.clear(); // start a new batch
+        }
+        mQueue.add(new CaptureItem(photoFile));
+        notifyState(photoFile, ICaptureQueueCallbacks.STATE_PENDING);
+        processQueue();
+    }
+
+    private void processQueue() {
+        if (mDestroyed) {
+            return;
+        }
+        int processing = 0;
+        for (CaptureItem item : mQueue) {
+            if (item.mState == ICaptureQueueCallbacks.STATE_PROCESSING) {
+                processing++;
+            }
+        }
+        for (CaptureItem item : mQueue) {
+            if (processing >= MAX_PARALLEL_PROCESSING) {
+                break;
+            }
+            if (item.mState == ICaptureQueueCallbacks.STATE_PENDING) {
+                processing++;
+                item.mState = ICaptureQueueCallbacks.STATE_PROCESSING;
+                notifyState(item.mFile, item.mState);
+                item.mProcessing = ImageProcessingEngine.getInstance()
+                        .process(item.mFile, getPhotoOptions(), new ItemCallbacks(item));
+            }
+        }
+    }
+
+    private void onItemFinished(CaptureItem item, int state) {
+        item.mState = state;
+        item.mProcessing = null;
+        notifyState(item.mFile, state);
+
+        int finished = 0;
+        for (CaptureItem queued : mQueue) {
+            if (queued.isFinished()) {
+                finished++;
+            }
+        }
+        IPhotoCallbacks callback = getCallback();
+        if (callback instanceof ICaptureQueueCallbacks) {
+            ((ICaptureQueueCallbacks) callback).onCaptureQueueProgress(finished, mQueue.size());
+        }
+        processQueue();
+    }
+
+    private void notifyState(File photoFile, int state) {
+        IPhotoCallbacks callback = getCallback();
+        if (callback instanceof ICaptureQueueCallbacks) {
+            ((ICaptureQueueCallbacks) callback).onCaptureStateChanged(photoFile, state);
+        }
+    }
+
+    private void saveQueue(Bundle outState) {
+        ArrayList<String> files = new ArrayList<>();
+        int[] states = new int[mQueue.size()];
+        for (int i = 0; i < mQueue.size(); i++) {
+            files.add(mQueue.get(i).mFile.getAbsolutePath());
+            states[i] = mQueue.get(i).mState;
+        }
+        outState.putStringArrayList(KEY_QUEUE_FILES, files);
+        outState.putIntArray(KEY_QUEUE_STATES, states);
+    }
+
+    private void restoreQueue(Bundle savedInstanceState) {
+        ArrayList<String> files = savedInstanceState.getStringArrayList(KEY_QUEUE_FILES);
+        int[] states = savedInstanceState.getIntArray(KEY_QUEUE_STATES);
+        if (null == files || null == states || files.size() != states.length) {
+            return;
+        }
+        for (int i = 0; i < files.size(); i++) {
+            CaptureItem item = new CaptureItem(new File(files.get(i)));
+            // processing has been interrupted by the process death, so start it again; the file is
+            // intact because ImageEncoder replaces it atomically
+            item.mState = states[i] == ICaptureQueueCallbacks.STATE_PROCESSING ?
+                    ICaptureQueueCallbacks.STATE_PENDING : states[i];
+            mQueue.add(item);
+        }
+    }
+
+    private boolean isQueued(File file) {
+        for (CaptureItem item : mQueue) {
+            if (!item.isFinished() && item.mFile.equals(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private File createImageFile() throws Exception {
         File targetFile;
-        if (!TextUtils.isEmpty(getTargetFile())) {
+        if (!TextUtils.isEmpty(getTargetFile()) && !isQueued(new File(getTargetFile()))) {
             targetFile = new File(getTargetFile());
             targetFile.createNewFile(); // may be ignored without any problems
         }
@@ -369,29 +540,33 @@ public class CameraFragment extends Fragment {
 
     private boolean isDetectRotation() { return getArguments().getBoolean(ARG_DETECT_ROTATION, false); }
 
-    private IPhotoCallbacks getCallback() {
-        if (null == mPhotoCallback) {
-            // first call, callback hasn't been specified yet
-            mPhotoCallback = EMPTY_CALLBACK; // use empty callback by default
-            String tag = getTargetTag();
-            if (TextUtils.isEmpty(tag)) {
-                // target fragment's tag is not specified;
-                // assume that the host activity have to receive all callbacks
-                if (null != getActivity() && getActivity() instanceof IPhotoCallbacks) {
-                    // yep, activity implements required interface
-                    mPhotoCallback = (IPhotoCallbacks) getActivity();
-                }
-            }
-            else {
-                // target tag is specified; searching target fragment by tag
-                Fragment fragment = getFragmentManager().findFragmentByTag(tag);
-                if (null != fragment && fragment instanceof IPhotoCallbacks) {
-                    // it's found and impl. IPhotoCallback, so we use it
-                    mPhotoCallback = (IPhotoCallbacks) fragment;
-                }
+    private PhotoOptions getPhotoOptions() {
+        PhotoOptions options = new PhotoOptions(getFileProvider())
+                .setMaxDimension(getMaxDimension())
+                .setTargetImageFile(getTargetFile())
+                .setTargetFragmentTag(getTargetTag())
+                .setDetectRotation(isDetectRotation())
+                .setRotationMode(getArguments().getInt(ARG_ROTATION_MODE, PhotoOptions.ROTATION_MODE_PIXELS))
+                .setDecodeConfig(getArguments().getInt(ARG_DECODE_CONFIG, PhotoOptions.DECODE_CONFIG_ARGB_8888))
+                .setOutputFormat(getArguments().getInt(ARG_OUTPUT_FORMAT, PhotoOptions.OUTPUT_FORMAT_JPEG))
+                .setQuality(getArguments().getInt(ARG_QUALITY, PhotoOptions.DEFAULT_QUALITY))
+                .setTargetSize(getArguments().getLong(ARG_TARGET_SIZE, 0));
+        String[] suffixes = getArguments().getStringArray(ARG_DERIVATIVE_SUFFIXES);
+        int[] dimensions = getArguments().getIntArray(ARG_DERIVATIVE_DIMENSIONS);
+        int[] qualities = getArguments().getIntArray(ARG_DERIVATIVE_QUALITIES);
+        if (null != suffixes && null != dimensions && null != qualities) {
+            for (int i = 0; i < suffixes.length; i++) {
+                PhotoOptions.Derivative derivative = new PhotoOptions.Derivative(suffixes[i], dimensions[i]);
+                derivative.mQuality = qualities[i];
+                options.addDerivative(derivative);
             }
         }
-        return mPhotoCallback;
+        return options;
+    }
+
+    private IPhotoCallbacks getCallback() {
+        // if the tag is not specified the host activity receives all callbacks
+        return mTargetResolver.resolve(getTargetTag());
     }
 
     private boolean needPermissions() {
@@ -426,6 +601,28 @@ public class CameraFragment extends Fragment {
         }
     }
 
+    // resolves the target on each call, so results of processing reach the current activity
+    // even if it has been recreated while the photo was being processed
+    private final IDerivativeCallbacks mCallbackProxy = new IDerivativeCallbacks() {
+        @Override
+        public void onDerivativeCaptured(File photoFile, String suffix, File derivativeFile) {
+            IPhotoCallbacks callback = getCallback();
+            if (callback instanceof IDerivativeCallbacks) {
+                ((IDerivativeCallbacks) callback).onDerivativeCaptured(photoFile, suffix, derivativeFile);
+            }
+        }
+        @Override
+        public void onPhotoCaptured(File photoFile) { getCallback().onPhotoCaptured(photoFile); }
+        @Override
+        public void onThumbnailCaptured(Bitmap bitmap) { getCallback().onThumbnailCaptured(bitmap); }
+        @Override
+        public void onStartPhotoProcessing() { getCallback().onStartPhotoProcessing(); }
+        @Override
+        public void onFinishPhotoProcessing() { getCallback().onFinishPhotoProcessing(); }
+        @Override
+        public void onPhotoError(int code) { getCallback().onPhotoError(code); }
+    };
+
     private static final IPhotoCallbacks EMPTY_CALLBACK = new IPhotoCallbacks() {
         @Override
         public void onPhotoCaptured(File photoFile) { ; }
@@ -441,5 +638,78 @@ public class CameraFragment extends Fragment {
 
     // ---
 
+    private static class CaptureItem {
+        final File mFile;
+        int mState = ICaptureQueueCallbacks.STATE_PENDING;
+        Disposable mProcessing; // NULL if the item is not being processed
+
+        CaptureItem(File file) {
+            mFile = file;
+        }
+
+        boolean isFinished() {
+            return mState != ICaptureQueueCallbacks.STATE_PENDING && mState != ICaptureQueueCallbacks.STATE_PROCESSING;
+        }
+    }
+
+    // passes results of a queued photo to the target and updates the state of the item
+    private class ItemCallbacks implements IDerivativeCallbacks {
+        private final CaptureItem mItem;
+        private boolean mFailed = false;
+
+        ItemCallbacks(CaptureItem item) {
+            mItem = item;
+        }
+
+        @Override
+        public void onDerivativeCaptured(File photoFile, String suffix, File derivativeFile) {
+            mCallbackProxy.onDerivativeCaptured(photoFile, suffix, derivativeFile);
+        }
+
+        @Override
+        public void onPhotoCaptured(File photoFile) {
+            mCallbackProxy.onPhotoCaptured(photoFile);
+            onItemFinished(mItem, mFailed ? ICaptureQueueCallbacks.STATE_FAILED : ICaptureQueueCallbacks.STATE_DONE);
+        }
+
+        @Override
+        public void onThumbnailCaptured(Bitmap bitmap) {
+            mCallbackProxy.onThumbnailCaptured(bitmap);
+        }
+
+        // photos of the queue are processed in parallel, so start/finish are reported once per batch:
+        // when the first photo starts and when the last one finishes
+        @Override
+        public void onStartPhotoProcessing() {
+            if (!mBatchProcessing) {
+                mBatchProcessing = true;
+                mCallbackProxy.onStartPhotoProcessing();
+            }
+        }
+
+        @Override
+        public void onFinishPhotoProcessing() {
+            for (CaptureItem item : mQueue) {
+                if (item != mItem && !item.isFinished()) {
+                    return; // the batch is still being processed
+                }
+            }
+            if (mBatchProcessing) {
+                mBatchProcessing = false;
+                mCallbackProxy.onFinishPhotoProcessing();
+            }
+        }
+
+        @Override
+        public void onPhotoError(int code) {
+            mCallbackProxy.onPhotoError(code);
+            if (code == IPhotoCallbacks.ERR_CANCELLED) {
+                onItemFinished(mItem, ICaptureQueueCallbacks.STATE_CANCELLED);
+            }
+            else {
+                mFailed = true;
+            }
+        }
+    }
 
 }
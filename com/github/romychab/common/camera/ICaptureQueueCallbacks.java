@@ -0,0 +1,35 @@
+package com.github.romychab.common.camera;
+
+
+import java.io.File;
+
+/**
+ * Callbacks of the capture queue of {@link CameraFragment}: photos captured one after another
+ * are processed in the background and reported through these callbacks in addition
+ * to {@link IPhotoCallbacks}.
+ *
+ * Several photos may be processed at the same time, so {@link #onStartPhotoProcessing()} and
+ * {@link #onFinishPhotoProcessing()} are called once per batch: when the first photo starts and
+ * when the last one finishes. Use {@link #onCaptureStateChanged(File, int)} to follow single photos.
+ */
+public interface ICaptureQueueCallbacks extends IPhotoCallbacks {
+
+    int STATE_PENDING = 0;
+    int STATE_PROCESSING = 1;
+    int STATE_DONE = 2;
+    int STATE_FAILED = 3;
+    int STATE_CANCELLED = 4;
+
+    /**
+     * @param state one of STATE_* constants
+     */
+    void onCaptureStateChanged(File photoFile, int state);
+
+    /**
+     * @param finished number of photos of the current batch that are done, failed or cancelled
+     * @param total number of photos of the current batch; a new batch starts when a photo is captured
+     *              after all photos of the previous batch have been finished
+     */
+    void onCaptureQueueProgress(int finished, int total);
+
+}
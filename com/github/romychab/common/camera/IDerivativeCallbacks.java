@@ -0,0 +1,18 @@
+package com.github.romychab.common.camera;
+
+
+import java.io.File;
+
+/**
+ * Callbacks of photos processed with derivatives (see {@link PhotoOptions#addDerivative(PhotoOptions.Derivative)}).
+ */
+public interface IDerivativeCallbacks extends IPhotoCallbacks {
+
+    /**
+     * Called for each derivative before {@link #onPhotoCaptured(File)}.
+     * @param photoFile the main photo file
+     * @param suffix suffix of the derivative spec
+     */
+    void onDerivativeCaptured(File photoFile, String suffix, File derivativeFile);
+
+}
@@ -0,0 +1,234 @@
+package com.github.romychab.common.camera;
+
+import android.graphics.Bitmap;
+import android.media.ExifInterface;
+
+import com.github.romychab.common.utils.threads.NamedThreadFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes processed bitmaps into files.
+ *
+ * If a target size is specified, the highest quality which fits into it is found by a binary search;
+ * candidates are encoded into in-memory buffers reused by the thread, and only the chosen one
+ * is written to the file. The buffers are released together with idle threads.
+ *
+ * Several images (e.g. derivatives of one photo) may be encoded in parallel by {@link #encodeAll(List)}.
+ * Jobs are written into temporary files which then replace the target files, so a process killed
+ * while writing never leaves a truncated image (the target is often the source photo itself).
+ */
+class ImageEncoder {
+
+    static final int MIN_QUALITY = 10;
+
+    // the max quality first, then 7 steps of binary search over the remaining 90 qualities (10..99)
+    private static final int MAX_ATTEMPTS = 8;
+
+    private static final ThreadLocal<ByteArrayOutputStream[]> sBuffers = new ThreadLocal<ByteArrayOutputStream[]>() {
+        @Override
+        protected ByteArrayOutputStream[] initialValue() {
+            return new ByteArrayOutputStream[] { new ByteArrayOutputStream(), new ByteArrayOutputStream() };
+        }
+    };
+
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private ImageEncoder() {
+    }
+
+    /**
+     * Encode all images in parallel; the first one is encoded on the calling thread.
+     * Returns when all images are encoded or the first error occurs and all started encodings are over.
+     */
+    static void encodeAll(List<Job> jobs) throws IOException {
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 1; i < jobs.size(); i++) {
+                final Job job = jobs.get(i);
+                futures.add(ExecutorHolder.EXECUTOR.submit(() -> {
+                    encode(job);
+                    return null;
+                }));
+            }
+            if (!jobs.isEmpty()) {
+                encode(jobs.get(0));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            // bitmaps are returned to the pool by the caller, so nobody may use them after return
+            awaitAll(futures);
+        }
+    }
+
+    /**
+     * @param quality fixed quality; the max quality if targetBytes is specified
+     * @param targetBytes max size of the file or 0 to encode with the fixed quality; if even
+     *                    {@link #MIN_QUALITY} (or the max quality, if it's lower) doesn't fit,
+     *                    the image is encoded with that quality
+     */
+    static void encode(Bitmap bitmap, Bitmap.CompressFormat format, int quality, long targetBytes,
+                       File file) throws IOException {
+        if (targetBytes <= 0) {
+            OutputStream os = new FileOutputStream(file);
+            try {
+                bitmap.compress(format, quality, os);
+            } finally {
+                os.close();
+            }
+            return;
+        }
+
+        ByteArrayOutputStream[] buffers = sBuffers.get();
+        ByteArrayOutputStream candidate = buffers[0];
+        ByteArrayOutputStream best = buffers[1];
+        best.reset();
+
+        int minQuality = Math.min(MIN_QUALITY, quality); // never exceed the quality of the caller
+        int low = minQuality;
+        int high = quality;
+        int q = high; // the first attempt with the max quality, most images fit into the budget
+        for (int attempt = 0; attempt < MAX_ATTEMPTS && low <= high; attempt++) {
+            candidate.reset();
+            bitmap.compress(format, q, candidate);
+            if (candidate.size() <= targetBytes) {
+                // fits; keep it and try a higher quality
+                ByteArrayOutputStream swap = best;
+                best = candidate;
+                candidate = swap;
+                low = q + 1;
+            }
+            else {
+                high = q - 1;
+            }
+            q = (low + high) >>> 1;
+        }
+        if (best.size() == 0) {
+            // nothing fits, use the smallest possible result
+            best.reset();
+            bitmap.compress(format, minQuality, best);
+        }
+
+        OutputStream os = new FileOutputStream(file);
+        try {
+            best.writeTo(os);
+        } finally {
+            os.close();
+            candidate.reset();
+            best.reset();
+        }
+    }
+
+    // --- private
+
+    private static void encode(Job job) throws IOException {
+        File tempFile = new File(job.mFile.getParentFile(), job.mFile.getName() + TEMP_SUFFIX);
+        try {
+            encode(job.mBitmap, job.mFormat, job.mQuality, job.mTargetBytes, tempFile);
+            if (job.mOrientation != ExifInterface.ORIENTATION_UNDEFINED) {
+                long encodedBytes = tempFile.length();
+                writeOrientation(tempFile, job.mOrientation);
+                long tagBytes = tempFile.length() - encodedBytes;
+                if (job.mTargetBytes > 0 && tempFile.length() > job.mTargetBytes && job.mTargetBytes > tagBytes) {
+                    // the tag has pushed the file over the target size, search again leaving room for it
+                    encode(job.mBitmap, job.mFormat, job.mQuality, job.mTargetBytes - tagBytes, tempFile);
+                    writeOrientation(tempFile, job.mOrientation);
+                }
+            }
+            if (!tempFile.renameTo(job.mFile)) {
+                throw new IOException("Can't replace " + job.mFile);
+            }
+        } finally {
+            if (tempFile.exists()) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * The encoder doesn't copy metadata, so restore the tag instead of rotating pixels.
+     */
+    private static void writeOrientation(File file, int orientation) throws IOException {
+        ExifInterface exif = new ExifInterface(file.getAbsolutePath());
+        exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(orientation));
+        exif.saveAttributes();
+    }
+
+    private static void awaitAll(List<Future<?>> futures) {
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            if (future.cancel(false)) {
+                continue; // has not been started
+            }
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (Exception e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static final class Job {
+        final int mMaxDimension;
+        final File mFile;
+        final Bitmap.CompressFormat mFormat;
+        final int mQuality;
+        final long mTargetBytes;
+
+        Bitmap mBitmap;
+        int mOrientation = ExifInterface.ORIENTATION_UNDEFINED; // EXIF orientation tag to write
+
+        Job(int maxDimension, File file, Bitmap.CompressFormat format, int quality, long targetBytes) {
+            mMaxDimension = maxDimension;
+            mFile = file;
+            mFormat = format;
+            mQuality = quality;
+            mTargetBytes = targetBytes;
+        }
+    }
+
+    private static final class ExecutorHolder {
+        static final ThreadPoolExecutor EXECUTOR;
+
+        static {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+            EXECUTOR = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new NamedThreadFactory(ImageEncoder.class.getSimpleName()));
+            EXECUTOR.allowCoreThreadTimeOut(true);
+        }
+    }
+}
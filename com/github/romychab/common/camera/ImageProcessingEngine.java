@@ -0,0 +1,262 @@
+package com.github.romychab.common.camera;
+
+import android.util.Log;
+
+import com.github.romychab.common.utils.handlers.IHandler;
+import com.github.romychab.common.utils.handlers.UiHandler;
+import com.github.romychab.common.utils.threads.NamedThreadFactory;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Executes {@link ProcessImageTask}s on a dedicated bounded thread pool, so photo processing
+ * doesn't wait behind other work of the app (e.g. AsyncTasks) and doesn't start more decodes
+ * at the same time than the device can handle.
+ *
+ * Results are delivered on the main thread. Processing requests that don't fit into the queue
+ * are rejected and reported as errors.
+ *
+ * {@link BitmapPool} is cleared when the engine has been idle for a while, like its threads,
+ * so bitmaps kept for reuse don't outlive the processing.
+ */
+public class ImageProcessingEngine {
+
+    public static final String TAG = ImageProcessingEngine.class.getSimpleName();
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    private static final int MAX_CONCURRENCY = 4; // decodes are memory-bound, more threads don't help
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final IHandler mHandler;
+
+    private final AtomicInteger mUnfinishedJobs = new AtomicInteger();
+
+    /**
+     * @return process-wide engine with concurrency based on the number of CPU cores
+     */
+    public static ImageProcessingEngine getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * @param concurrency max number of images processed at the same time
+     * @param queueCapacity max number of images waiting for processing
+     */
+    public ImageProcessingEngine(int concurrency, int queueCapacity) {
+        this(concurrency, queueCapacity, UiHandler.main());
+    }
+
+    ImageProcessingEngine(int concurrency, int queueCapacity, IHandler handler) {
+        concurrency = Math.max(1, concurrency);
+        mExecutor = new ThreadPoolExecutor(concurrency, concurrency, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queueCapacity)), new NamedThreadFactory(TAG)) {
+            @Override
+            protected void afterExecute(Runnable runnable, Throwable throwable) {
+                // called for cancelled jobs too, so each accepted job is counted down exactly once
+                onJobFinished();
+            }
+        };
+        mExecutor.allowCoreThreadTimeOut(true);
+        mHandler = handler;
+    }
+
+    // --- public
+
+    /**
+     * Process the image and deliver results to the callbacks in the same order as before:
+     * {@link IPhotoCallbacks#onStartPhotoProcessing()} is called immediately, then
+     * {@link IPhotoCallbacks#onFinishPhotoProcessing()} and {@link IPhotoCallbacks#onPhotoCaptured(File)}
+     * (preceded by {@link IPhotoCallbacks#onPhotoError(int)} if processing has failed).
+     * If the callback implements {@link IDerivativeCallbacks}, derivatives are reported before
+     * {@link IPhotoCallbacks#onPhotoCaptured(File)}.
+     * Must be called on the main thread.
+     * @return disposable that cancels the processing; callbacks receive {@link IPhotoCallbacks#ERR_CANCELLED}
+     */
+    public Disposable process(File imageFile, PhotoOptions options, final IPhotoCallbacks callback) {
+        callback.onStartPhotoProcessing();
+        return execute(new ProcessImageTask(imageFile, options), new IListener() {
+            @Override
+            public void onSuccess(File file, Map<String, File> derivativeFiles) {
+                callback.onFinishPhotoProcessing();
+                if (callback instanceof IDerivativeCallbacks) {
+                    for (Map.Entry<String, File> derivative : derivativeFiles.entrySet()) {
+                        ((IDerivativeCallbacks) callback).onDerivativeCaptured(file, derivative.getKey(),
+                                derivative.getValue());
+                    }
+                }
+                callback.onPhotoCaptured(file);
+            }
+
+            @Override
+            public void onError(File file, Throwable error) {
+                callback.onPhotoError(IPhotoCallbacks.ERR_CANT_PROCESS_IMAGE);
+                callback.onFinishPhotoProcessing();
+                callback.onPhotoCaptured(file);
+            }
+
+            @Override
+            public void onCancelled() {
+                callback.onFinishPhotoProcessing();
+                callback.onPhotoError(IPhotoCallbacks.ERR_CANCELLED);
+            }
+        });
+    }
+
+    /**
+     * Process the image when subscribed. The result is emitted on the main thread;
+     * disposing the subscription cancels the processing.
+     * Derivatives are written but not reported, use {@link #processWithDerivatives(File, PhotoOptions)}
+     * to get their files.
+     */
+    public Single<File> process(final File imageFile, final PhotoOptions options) {
+        return processWithDerivatives(imageFile, options).map(ProcessedPhoto::getFile);
+    }
+
+    /**
+     * The same as {@link #process(File, PhotoOptions)}, but emits the files of derivatives too.
+     */
+    public Single<ProcessedPhoto> processWithDerivatives(final File imageFile, final PhotoOptions options) {
+        return Single.create(emitter -> {
+            Disposable disposable = execute(new ProcessImageTask(imageFile, options), new IListener() {
+                @Override
+                public void onSuccess(File file, Map<String, File> derivativeFiles) {
+                    emitter.onSuccess(new ProcessedPhoto(file, derivativeFiles));
+                }
+
+                @Override
+                public void onError(File file, Throwable error) {
+                    emitter.onError(error);
+                }
+
+                @Override
+                public void onCancelled() {
+                    if (!emitter.isDisposed()) {
+                        emitter.onError(new CancellationException());
+                    }
+                }
+            });
+            emitter.setDisposable(disposable);
+        });
+    }
+
+    public int getQueueDepth() {
+        return mExecutor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return mExecutor.getActiveCount();
+    }
+
+    // --- private
+
+    private Disposable execute(ProcessImageTask task, IListener listener) {
+        Job job = new Job(task, listener);
+        mUnfinishedJobs.incrementAndGet();
+        mHandler.cancel(mReleasePool);
+        try {
+            job.mFuture = mExecutor.submit(job);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Queue is full, " + task.getImageFile() + " is rejected");
+            onJobFinished();
+            job.deliverError(e);
+        }
+        return job;
+    }
+
+    private void onJobFinished() {
+        if (mUnfinishedJobs.decrementAndGet() == 0) {
+            mHandler.postDelayed(TimeUnit.SECONDS.toMillis(KEEP_ALIVE_SECONDS), mReleasePool);
+        }
+    }
+
+    private final Runnable mReleasePool = new Runnable() {
+        @Override
+        public void run() {
+            if (mUnfinishedJobs.get() == 0) {
+                BitmapPool.getInstance().clear();
+            }
+        }
+    };
+
+    private interface IListener {
+        void onSuccess(File file, Map<String, File> derivativeFiles);
+        void onError(File file, Throwable error);
+        void onCancelled();
+    }
+
+    private final class Job implements Runnable, Disposable {
+
+        private final ProcessImageTask mTask;
+        private final IListener mListener;
+        private final AtomicBoolean mFinished = new AtomicBoolean(false);
+
+        volatile Future<?> mFuture;
+
+        Job(ProcessImageTask task, IListener listener) {
+            mTask = task;
+            mListener = listener;
+        }
+
+        @Override
+        public void run() {
+            if (mTask.isCancelled()) {
+                return;
+            }
+            try {
+                final File file = mTask.run();
+                if (mFinished.compareAndSet(false, true)) {
+                    mHandler.post(() -> mListener.onSuccess(file, mTask.getDerivativeFiles()));
+                }
+            } catch (CancellationException e) {
+                // already delivered by dispose()
+            } catch (Exception e) {
+                Log.e(TAG, "Error!", e);
+                deliverError(e);
+            }
+        }
+
+        @Override
+        public void dispose() {
+            if (!mFinished.compareAndSet(false, true)) {
+                return;
+            }
+            mTask.cancel();
+            Future<?> future = mFuture;
+            if (null != future) {
+                future.cancel(true);
+            }
+            mHandler.post(mListener::onCancelled);
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return mFinished.get();
+        }
+
+        void deliverError(final Throwable error) {
+            if (mFinished.compareAndSet(false, true)) {
+                mHandler.post(() -> mListener.onError(mTask.getImageFile(), error));
+            }
+        }
+    }
+
+    private static final class InstanceHolder {
+        static final ImageProcessingEngine INSTANCE = new ImageProcessingEngine(
+                Math.min(MAX_CONCURRENCY, Math.max(1, Runtime.getRuntime().availableProcessors() - 1)),
+                DEFAULT_QUEUE_CAPACITY);
+    }
+}
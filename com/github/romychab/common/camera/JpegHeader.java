@@ -0,0 +1,232 @@
+package com.github.romychab.common.camera;
+
+import android.media.ExifInterface;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Dimensions and EXIF orientation of a JPEG file read in one pass over its header,
+ * without decoding the image and without reading the whole EXIF block into separate objects.
+ */
+class JpegHeader {
+
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int MARKER_APP1 = 0xE1;
+
+    private static final int TAG_ORIENTATION = 0x0112;
+
+    private static final int MAX_HEADER_BYTES = 1 << 20; // give up on files with huge metadata
+
+    final int mWidth;
+    final int mHeight;
+
+    /**
+     * One of ExifInterface.ORIENTATION_* constants
+     */
+    final int mOrientation;
+
+    private JpegHeader(int width, int height, int orientation) {
+        mWidth = width;
+        mHeight = height;
+        mOrientation = orientation;
+    }
+
+    /**
+     * @return rotation in degrees clockwise required by the EXIF orientation; mirrored orientations
+     *         are not supported and treated as 0
+     */
+    int getRotation() {
+        return rotationOf(mOrientation);
+    }
+
+    /**
+     * @param orientation one of ExifInterface.ORIENTATION_* constants
+     * @return rotation in degrees clockwise; mirrored orientations are treated as 0
+     */
+    static int rotationOf(int orientation) {
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                return 90;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                return 180;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return TRUE if the image is displayed as stored, without any EXIF transformation
+     */
+    boolean isUpright() {
+        return mOrientation == ExifInterface.ORIENTATION_NORMAL ||
+                mOrientation == ExifInterface.ORIENTATION_UNDEFINED;
+    }
+
+    /**
+     * @return parsed header or NULL if the file is not a JPEG or its header is malformed
+     */
+    @Nullable
+    static JpegHeader read(File file) {
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            return read(in);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (null != in) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    // --- private
+
+    @Nullable
+    private static JpegHeader read(InputStream in) throws IOException {
+        if (readByte(in) != 0xFF || readByte(in) != MARKER_SOI) {
+            return null;
+        }
+        int orientation = ExifInterface.ORIENTATION_UNDEFINED;
+        int consumed = 2;
+        while (consumed < MAX_HEADER_BYTES) {
+            // markers may be preceded by any number of 0xFF fill bytes
+            if (readByte(in) != 0xFF) {
+                return null;
+            }
+            int marker = readByte(in);
+            while (marker == 0xFF) {
+                marker = readByte(in);
+            }
+            if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                return null; // no frame header before image data
+            }
+            int length = readUnsignedShort(in) - 2;
+            if (length < 0) {
+                return null;
+            }
+            consumed += length + 4;
+
+            if (isStartOfFrame(marker)) {
+                readByte(in); // precision
+                int height = readUnsignedShort(in);
+                int width = readUnsignedShort(in);
+                if (width <= 0 || height <= 0) {
+                    return null;
+                }
+                return new JpegHeader(width, height, orientation);
+            }
+            if (marker == MARKER_APP1 && orientation == ExifInterface.ORIENTATION_UNDEFINED) {
+                byte[] segment = new byte[length];
+                readFully(in, segment);
+                orientation = parseExifOrientation(segment);
+            }
+            else {
+                skipFully(in, length);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isStartOfFrame(int marker) {
+        // SOF0..SOF15 except DHT (C4), JPG (C8) and DAC (CC)
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    private static int parseExifOrientation(byte[] segment) {
+        // "Exif\0\0" followed by a TIFF header
+        if (segment.length < 14 || segment[0] != 'E' || segment[1] != 'x' || segment[2] != 'i' ||
+                segment[3] != 'f' || segment[4] != 0 || segment[5] != 0) {
+            return ExifInterface.ORIENTATION_UNDEFINED;
+        }
+        int tiff = 6;
+        boolean littleEndian;
+        if (segment[tiff] == 'I' && segment[tiff + 1] == 'I') {
+            littleEndian = true;
+        }
+        else if (segment[tiff] == 'M' && segment[tiff + 1] == 'M') {
+            littleEndian = false;
+        }
+        else {
+            return ExifInterface.ORIENTATION_UNDEFINED;
+        }
+        long ifdOffset = readInt(segment, tiff + 4, littleEndian) & 0xFFFFFFFFL;
+        int ifd = tiff + (int) Math.min(ifdOffset, segment.length);
+        if (ifd + 2 > segment.length) {
+            return ExifInterface.ORIENTATION_UNDEFINED;
+        }
+        int entries = readShort(segment, ifd, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > segment.length) {
+                break;
+            }
+            if (readShort(segment, entry, littleEndian) == TAG_ORIENTATION) {
+                // type SHORT, the value is stored in the first two bytes of the value field
+                int value = readShort(segment, entry + 8, littleEndian);
+                return value >= 1 && value <= 8 ? value : ExifInterface.ORIENTATION_UNDEFINED;
+            }
+        }
+        return ExifInterface.ORIENTATION_UNDEFINED;
+    }
+
+    private static int readShort(byte[] data, int offset, boolean littleEndian) {
+        int b0 = data[offset] & 0xFF;
+        int b1 = data[offset + 1] & 0xFF;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static int readInt(byte[] data, int offset, boolean littleEndian) {
+        int first = readShort(data, offset, littleEndian);
+        int second = readShort(data, offset + 2, littleEndian);
+        return littleEndian ? (second << 16) | first : (first << 16) | second;
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int value = in.read();
+        if (value < 0) {
+            throw new EOFException();
+        }
+        return value;
+    }
+
+    private static int readUnsignedShort(InputStream in) throws IOException {
+        return (readByte(in) << 8) | readByte(in);
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            int read = in.read(buffer, offset, buffer.length - offset);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                readByte(in);
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+}
@@ -2,6 +2,10 @@ package com.github.romychab.common.camera;
 
 
 import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Options to create a {@link CameraFragment}.
@@ -10,6 +14,38 @@ public class PhotoOptions {
 
     public static final int MAX_SIZE = 1200; // max dimension (either with or height) of image
 
+    /**
+     * Rotate pixels of the image according to its EXIF orientation.
+     */
+    public static final int ROTATION_MODE_PIXELS = 0;
+
+    /**
+     * Keep pixels as they are and keep the EXIF orientation tag in the result file, so viewers rotate it.
+     * Much cheaper for large images, but consumers of the file must respect EXIF orientation.
+     */
+    public static final int ROTATION_MODE_EXIF = 1;
+
+    /**
+     * Decode images as ARGB_8888: the best quality, 4 bytes per pixel.
+     */
+    public static final int DECODE_CONFIG_ARGB_8888 = 0;
+
+    /**
+     * Decode images as RGB_565: 2 bytes per pixel, smooth gradients may show banding.
+     */
+    public static final int DECODE_CONFIG_RGB_565 = 1;
+
+    /**
+     * Use RGB_565 for opaque (JPEG) sources on devices with a small heap, ARGB_8888 otherwise.
+     */
+    public static final int DECODE_CONFIG_AUTO = 2;
+
+    public static final int OUTPUT_FORMAT_JPEG = 0;
+
+    public static final int OUTPUT_FORMAT_WEBP = 1;
+
+    public static final int DEFAULT_QUALITY = 80;
+
     String mFileProvider;
 
     int mMaxDimension = MAX_SIZE;
@@ -22,6 +58,18 @@ public class PhotoOptions {
 
     boolean mDetectRotation = false;
 
+    int mRotationMode = ROTATION_MODE_PIXELS;
+
+    int mDecodeConfig = DECODE_CONFIG_ARGB_8888;
+
+    int mOutputFormat = OUTPUT_FORMAT_JPEG;
+
+    int mQuality = DEFAULT_QUALITY;
+
+    long mTargetBytes = 0;
+
+    List<Derivative> mDerivatives = new ArrayList<>();
+
     /**
      * @param fileProvider Provider authority that can share app files to other applications
      *                     (see example in the comment to {@link CameraFragment}).
@@ -69,4 +117,101 @@ public class PhotoOptions {
         mDetectRotation = detectRotation;
         return this;
     }
+
+    /**
+     * @param rotationMode how rotation is applied if it is detected (see {@link #setDetectRotation(boolean)}):
+     *                     {@link #ROTATION_MODE_PIXELS} (by default) or {@link #ROTATION_MODE_EXIF}.
+     */
+    public PhotoOptions setRotationMode(int rotationMode) {
+        mRotationMode = rotationMode;
+        return this;
+    }
+
+    /**
+     * @param decodeConfig pixel format used while processing the image: {@link #DECODE_CONFIG_ARGB_8888}
+     *                     (by default), {@link #DECODE_CONFIG_RGB_565} or {@link #DECODE_CONFIG_AUTO}.
+     */
+    public PhotoOptions setDecodeConfig(int decodeConfig) {
+        mDecodeConfig = decodeConfig;
+        return this;
+    }
+
+    /**
+     * @param outputFormat {@link #OUTPUT_FORMAT_JPEG} (by default) or {@link #OUTPUT_FORMAT_WEBP}.
+     *                     The name of the target file is not changed.
+     */
+    public PhotoOptions setOutputFormat(int outputFormat) {
+        mOutputFormat = outputFormat;
+        return this;
+    }
+
+    /**
+     * @param quality quality of the result image (0..100), {@link #DEFAULT_QUALITY} by default.
+     *                If the target size is specified, it's the max quality. A JPEG photo that
+     *                doesn't need other changes is kept as is only with the default quality.
+     */
+    public PhotoOptions setQuality(int quality) {
+        mQuality = Math.max(0, Math.min(100, quality));
+        return this;
+    }
+
+    /**
+     * @param targetBytes max size of the result file; the highest quality that fits is chosen.
+     *                    0 (by default) to use the fixed quality.
+     */
+    public PhotoOptions setTargetSize(long targetBytes) {
+        mTargetBytes = targetBytes;
+        return this;
+    }
+
+    /**
+     * Produce one more smaller copy of the photo (e.g. a thumbnail) from the same decoded image.
+     * Derivatives are reported by {@link IDerivativeCallbacks#onDerivativeCaptured(java.io.File, String, java.io.File)}
+     * if the target implements {@link IDerivativeCallbacks}.
+     * @throws IllegalArgumentException if the suffix of the derivative is empty or already used,
+     *         because derivatives with the same suffix would be written into the same file
+     */
+    public PhotoOptions addDerivative(Derivative derivative) {
+        if (TextUtils.isEmpty(derivative.mSuffix)) {
+            throw new IllegalArgumentException("Suffix of a derivative can't be empty");
+        }
+        for (Derivative added : mDerivatives) {
+            if (added.mSuffix.equals(derivative.mSuffix)) {
+                throw new IllegalArgumentException("Duplicate suffix of a derivative: " + derivative.mSuffix);
+            }
+        }
+        mDerivatives.add(derivative);
+        return this;
+    }
+
+    /**
+     * Spec of a derivative image; it's saved next to the photo file with the suffix
+     * added to its name: 'photo.jpg' -&gt; 'photo_thumb.jpg'.
+     * The output format is the same as for the photo; the target size is not applied.
+     */
+    public static class Derivative {
+
+        final String mSuffix;
+
+        final int mMaxDimension;
+
+        int mQuality = -1; // the same as for the photo
+
+        /**
+         * @param suffix unique suffix added to the name of the photo file, e.g. "_thumb"
+         * @param maxDimension max width and height of the derivative; max value: {@link #MAX_SIZE}
+         */
+        public Derivative(String suffix, int maxDimension) {
+            mSuffix = suffix;
+            mMaxDimension = maxDimension > MAX_SIZE ? MAX_SIZE : maxDimension;
+        }
+
+        /**
+         * @param quality quality of the derivative (0..100); the quality of the photo by default
+         */
+        public Derivative setQuality(int quality) {
+            mQuality = Math.max(0, Math.min(100, quality));
+            return this;
+        }
+    }
 }
@@ -3,122 +3,478 @@ package com.github.romychab.common.camera;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.media.ExifInterface;
-import android.os.AsyncTask;
+import android.os.Build;
 import android.util.Log;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.OutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 /**
  * Processing captured image.
  * Performing resizing and rotating image.
+ * JPEG files which already fit into the max dimension and need no rotation are left untouched.
+ * Very large images are decoded by strips, so memory usage depends on the result size only.
+ * Derivatives (see {@link PhotoOptions#addDerivative(PhotoOptions.Derivative)}) are produced from the same
+ * decoded bitmap and encoded in parallel with the main image.
+ *
+ * The task is executed by {@link ImageProcessingEngine} on a background thread.
+ * It may be cancelled from any thread; the work is interrupted between processing stages
+ * and the running decode is aborted.
  */
-public class ProcessImageTask extends AsyncTask<Void, Void, Boolean> {
+public class ProcessImageTask {
 
     public static final String TAG = ProcessImageTask.class.getSimpleName();
 
-    private IPhotoCallbacks mCallback;
-    private File mImageFile;
-    private int mMaxDimension;
-    private boolean mRotate;
+    private static final long LOW_MEMORY_HEAP_BYTES = 64 * 1024 * 1024; // heaps up to this size prefer RGB_565
+    private static final long MAX_DECODE_BUDGET_BYTES = 32 * 1024 * 1024; // larger decodes are tiled
+    private static final long STRIP_BYTES = 2 * 1024 * 1024; // approx. size of a decoded strip
+    private static final int MIN_STRIP_ROWS = 16;
+    private static final int STRIP_OVERLAP = 2; // rows decoded above and below a strip
 
-    ProcessImageTask(File imageFile, int maxDimension, boolean rotate, IPhotoCallbacks callback) {
-        mCallback = callback;
+    private final File mImageFile;
+    private final int mMaxDimension;
+    private final boolean mRotate;
+    private final int mRotationMode;
+    private final int mDecodeConfig;
+    private final Bitmap.CompressFormat mOutputFormat;
+    private final int mQuality;
+    private final long mTargetBytes;
+    private final List<PhotoOptions.Derivative> mDerivatives;
+
+    private final Map<String, File> mDerivativeFiles = new LinkedHashMap<>();
+
+    private final BitmapPool mPool;
+
+    private Bitmap.Config mConfig = Bitmap.Config.ARGB_8888; // config of decoded bitmaps
+
+    private volatile boolean mCancelled;
+    private volatile BitmapFactory.Options mDecodeOptions;
+
+    ProcessImageTask(File imageFile, PhotoOptions options) {
         mImageFile = imageFile;
-        mMaxDimension = maxDimension;
-        mRotate = rotate;
+        mMaxDimension = options.mMaxDimension;
+        mRotate = options.mDetectRotation;
+        mRotationMode = options.mRotationMode;
+        mDecodeConfig = options.mDecodeConfig;
+        mOutputFormat = options.mOutputFormat == PhotoOptions.OUTPUT_FORMAT_WEBP ?
+                Bitmap.CompressFormat.WEBP : Bitmap.CompressFormat.JPEG;
+        mQuality = options.mQuality;
+        mTargetBytes = options.mTargetBytes;
+        mDerivatives = new ArrayList<>(options.mDerivatives);
+        mPool = BitmapPool.getInstance();
+    }
+
+    public File getImageFile() {
+        return mImageFile;
+    }
+
+    public void cancel() {
+        mCancelled = true;
+        BitmapFactory.Options decodeOptions = mDecodeOptions;
+        if (null != decodeOptions) {
+            decodeOptions.requestCancelDecode();
+        }
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
     }
 
-    @Override
-    protected void onPreExecute() {
-        super.onPreExecute();
-        mCallback.onStartPhotoProcessing();
+    /**
+     * @return files of derivatives by their suffixes, in the order of specs; valid after successful processing
+     */
+    public Map<String, File> getDerivativeFiles() {
+        return Collections.unmodifiableMap(mDerivativeFiles);
     }
 
-    @Override
-    protected Boolean doInBackground(Void... params) {
+    /**
+     * Process the image; must be called on a background thread.
+     * @return the processed file
+     * @throws CancellationException if the task has been cancelled
+     */
+    File run() throws IOException {
 
-        // Get the dimensions of the bitmap
+        // Get the dimensions and orientation of the image from its header
+        int photoW;
+        int photoH;
+        int orientation;
+        boolean keepOrientationTag = mRotate && mRotationMode == PhotoOptions.ROTATION_MODE_EXIF;
+        JpegHeader header = JpegHeader.read(mImageFile);
         BitmapFactory.Options bmOptions = new BitmapFactory.Options();
-        bmOptions.inJustDecodeBounds = true;
-        BitmapFactory.decodeFile(mImageFile.getAbsolutePath(), bmOptions);
-        int photoW = bmOptions.outWidth;
-        int photoH = bmOptions.outHeight;
-
-        // Determine how much to scale down the image
-        if (mMaxDimension < photoW || mMaxDimension < photoH) {
-            int scaleFactor = Math.min(photoW / mMaxDimension, photoH / mMaxDimension);
-            // Decode the image file into a Bitmap sized to fill the View
-            bmOptions.inSampleSize = scaleFactor;
-        }
-        bmOptions.inPurgeable = true;
+        mDecodeOptions = bmOptions;
+        if (null != header) {
+            photoW = header.mWidth;
+            photoH = header.mHeight;
+            orientation = header.mOrientation;
+            if ((!mRotate || header.isUpright() || keepOrientationTag) && Math.max(photoW, photoH) <= mMaxDimension &&
+                    mOutputFormat == Bitmap.CompressFormat.JPEG && mQuality == PhotoOptions.DEFAULT_QUALITY &&
+                    mDerivatives.isEmpty() &&
+                    (mTargetBytes <= 0 || mImageFile.length() <= mTargetBytes)) {
+                // the image is already fine; don't decode and re-encode it
+                mDecodeOptions = null;
+                return mImageFile;
+            }
+        }
+        else {
+            // not a JPEG or unknown header layout
+            bmOptions.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(mImageFile.getAbsolutePath(), bmOptions);
+            photoW = bmOptions.outWidth;
+            photoH = bmOptions.outHeight;
+            orientation = mRotate ? readOrientation() : ExifInterface.ORIENTATION_UNDEFINED;
+        }
+        // the tag can be written to JPEG files only
+        keepOrientationTag = keepOrientationTag && mOutputFormat == Bitmap.CompressFormat.JPEG;
+        int rotation = mRotate && !keepOrientationTag ? JpegHeader.rotationOf(orientation) : 0;
+        mConfig = resolveConfig(null != header);
+        throwIfCancelled();
+
+        // decode once for the largest rendition
+        int maxDimension = mMaxDimension;
+        for (PhotoOptions.Derivative derivative : mDerivatives) {
+            maxDimension = Math.max(maxDimension, derivative.mMaxDimension);
+        }
+
+        // Coarse stage: the decoder subsamples by powers of two only, so choose the largest one
+        // which keeps the image not smaller than the requested bound
+        int sampleSize = computeSampleSize(photoW, photoH, maxDimension);
+        Bitmap bitmap;
+        if (estimateDecodeBytes(photoW, photoH, sampleSize, mConfig) > getDecodeMemoryBudget()) {
+            // the sampled image is too large to be decoded at once
+            bitmap = decodeTiled(photoW, photoH, sampleSize, maxDimension, rotation);
+        }
+        else {
+            bitmap = decodeScaled(bmOptions, photoW, photoH, sampleSize, maxDimension, rotation);
+        }
+        throwIfCancelled(bitmap);
+
+        List<ImageEncoder.Job> jobs = new ArrayList<>();
+        boolean success = false;
+        try {
+            createJobs(bitmap, jobs);
+            if (keepOrientationTag) {
+                for (ImageEncoder.Job job : jobs) {
+                    job.mOrientation = orientation;
+                }
+            }
+            throwIfCancelled();
+            ImageEncoder.encodeAll(jobs);
+            success = true;
+        } finally {
+            // renditions of the same size share a bitmap
+            Map<Bitmap, Boolean> bitmaps = new IdentityHashMap<>();
+            bitmaps.put(bitmap, true);
+            for (ImageEncoder.Job job : jobs) {
+                if (null != job.mBitmap) {
+                    bitmaps.put(job.mBitmap, true);
+                }
+            }
+            for (Bitmap item : bitmaps.keySet()) {
+                mPool.put(item);
+            }
+            if (!success) {
+                deleteDerivativeFiles();
+            }
+        }
+
+        for (PhotoOptions.Derivative derivative : mDerivatives) {
+            mDerivativeFiles.put(derivative.mSuffix, getDerivativeFile(derivative));
+        }
+        return mImageFile;
+    }
+
+    // --- private
+
+    /**
+     * Scale the decoded bitmap to all renditions, from the largest one to the smallest one;
+     * each rendition is produced from the previous one, so large downscales don't alias.
+     * @param jobs receives the jobs; bitmaps are assigned to them as soon as they are created,
+     *             so the caller can release them if scaling fails
+     */
+    private void createJobs(Bitmap decoded, List<ImageEncoder.Job> jobs) {
+        jobs.add(new ImageEncoder.Job(mMaxDimension, mImageFile, mOutputFormat, mQuality, mTargetBytes));
+        for (PhotoOptions.Derivative derivative : mDerivatives) {
+            int quality = derivative.mQuality >= 0 ? derivative.mQuality : mQuality;
+            jobs.add(new ImageEncoder.Job(derivative.mMaxDimension, getDerivativeFile(derivative),
+                    mOutputFormat, quality, 0));
+        }
+
+        List<ImageEncoder.Job> bySize = new ArrayList<>(jobs);
+        Collections.sort(bySize, (first, second) -> second.mMaxDimension - first.mMaxDimension);
+        Bitmap previous = decoded;
+        for (ImageEncoder.Job job : bySize) {
+            throwIfCancelled();
+            float scale = computeScale(previous.getWidth(), previous.getHeight(), job.mMaxDimension);
+            if (scale != 1f) {
+                previous = transform(previous, scale, 0, false);
+            }
+            job.mBitmap = previous;
+        }
+    }
+
+    /**
+     * Remove derivatives written before a failure, so they don't outlive the failed photo.
+     */
+    private void deleteDerivativeFiles() {
+        for (PhotoOptions.Derivative derivative : mDerivatives) {
+            File file = getDerivativeFile(derivative);
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "Can't delete " + file);
+            }
+        }
+    }
+
+    private File getDerivativeFile(PhotoOptions.Derivative derivative) {
+        String name = mImageFile.getName();
+        int dot = name.lastIndexOf('.');
+        String derivativeName = dot < 0 ?
+                name + derivative.mSuffix :
+                name.substring(0, dot) + derivative.mSuffix + name.substring(dot);
+        return new File(mImageFile.getParentFile(), derivativeName);
+    }
+
+    private Bitmap decodeScaled(BitmapFactory.Options bmOptions, int photoW, int photoH,
+                                int sampleSize, int maxDimension, int rotation) throws IOException {
+        bmOptions.inSampleSize = sampleSize;
         bmOptions.inJustDecodeBounds = false;
+        bmOptions.inPreferredConfig = mConfig;
+        setDecodeTarget(bmOptions, photoW, photoH);
+
+        Bitmap bitmap = BitmapFactory.decodeFile(mImageFile.getAbsolutePath(), bmOptions);
+        if (null == bitmap && null != bmOptions.inBitmap) {
+            // the pooled bitmap can't be used by the decoder
+            mPool.put(bmOptions.inBitmap);
+            bmOptions.inBitmap = null;
+            if (!mCancelled) {
+                bitmap = BitmapFactory.decodeFile(mImageFile.getAbsolutePath(), bmOptions);
+            }
+        }
+        mDecodeOptions = null;
+        throwIfCancelled(bitmap);
+        if (null == bitmap) {
+            throw new IOException("Can't decode " + mImageFile);
+        }
 
+        // Exact stage: filtered scale to the bound, combined with rotation into a single pass
+        float scale = computeScale(bitmap.getWidth(), bitmap.getHeight(), maxDimension);
+        return transform(bitmap, scale, rotation, true);
+    }
+
+    /**
+     * Decode the image by horizontal strips and draw them scaled and rotated right into the result bitmap,
+     * so only the result and one strip are kept in memory.
+     */
+    private Bitmap decodeTiled(int photoW, int photoH, int sampleSize, int maxDimension,
+                               int rotation) throws IOException {
+        // maps pixels of the full-size source image to the result bitmap
+        Matrix matrix = new Matrix();
+        float scale = computeScale(photoW, photoH, maxDimension);
+        matrix.postScale(scale, scale);
+        matrix.postRotate(rotation);
+        RectF bounds = new RectF(0, 0, photoW, photoH);
+        matrix.mapRect(bounds);
+        matrix.postTranslate(-bounds.left, -bounds.top);
+
+        BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(mImageFile.getAbsolutePath(), false);
+        Bitmap result = null;
         try {
-            Bitmap bitmap = BitmapFactory.decodeFile(mImageFile.getAbsolutePath(), bmOptions);
-            bitmap = rotateIfNeeded(bitmap);
-            OutputStream os = new FileOutputStream(mImageFile);
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 80, os); // 80 - JPEG quality (max - 100)
-            bitmap.recycle();
-        } catch (Exception e) {
-            Log.e(TAG, "Error!", e);
-            return false;
+            result = obtainBitmap(Math.round(bounds.width()), Math.round(bounds.height()), mConfig);
+            Canvas canvas = new Canvas(result);
+            Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+            int stripHeight = computeStripHeight(photoW, sampleSize);
+            Rect region = new Rect();
+            RectF clip = new RectF();
+            Matrix stripMatrix = new Matrix();
+            for (int top = 0; top < photoH; top += stripHeight) {
+                int bottom = Math.min(photoH, top + stripHeight);
+                // decode a bit more than the strip, so filtering doesn't leave seams on its borders
+                region.set(0, Math.max(0, top - sampleSize * STRIP_OVERLAP),
+                        photoW, Math.min(photoH, bottom + sampleSize * STRIP_OVERLAP));
+
+                BitmapFactory.Options stripOptions = new BitmapFactory.Options();
+                stripOptions.inSampleSize = sampleSize;
+                stripOptions.inPreferredConfig = mConfig;
+                setDecodeTarget(stripOptions, region.width(), region.height());
+                mDecodeOptions = stripOptions;
+                Bitmap strip;
+                try {
+                    strip = decoder.decodeRegion(region, stripOptions);
+                } catch (IllegalArgumentException e) {
+                    // the pooled bitmap can't be used by the decoder
+                    mPool.put(stripOptions.inBitmap);
+                    stripOptions.inBitmap = null;
+                    strip = decoder.decodeRegion(region, stripOptions);
+                }
+                mDecodeOptions = null;
+                throwIfCancelled(strip);
+                if (null == strip) {
+                    throw new IOException("Can't decode " + region + " of " + mImageFile);
+                }
+
+                stripMatrix.setScale(sampleSize, sampleSize);
+                stripMatrix.postTranslate(0, region.top);
+                stripMatrix.postConcat(matrix);
+                clip.set(0, top, photoW, bottom);
+                matrix.mapRect(clip);
+
+                canvas.save();
+                canvas.clipRect(clip);
+                canvas.drawBitmap(strip, stripMatrix, paint);
+                canvas.restore();
+                mPool.put(strip);
+            }
+            Bitmap done = result;
+            result = null;
+            return done;
+        } finally {
+            decoder.recycle();
+            mPool.put(result);
         }
-        return true;
     }
 
-    @Override
-    protected void onPostExecute(Boolean res) {
-        super.onPostExecute(res);
-        if (!res) {
-            mCallback.onPhotoError(IPhotoCallbacks.ERR_CANT_PROCESS_IMAGE);
+    /**
+     * @return height of a strip in pixels of the source image
+     */
+    private int computeStripHeight(int photoW, int sampleSize) {
+        long rowBytes = BitmapPool.bytesOf(Math.max(1, photoW / sampleSize), 1, mConfig);
+        int rows = Math.max(MIN_STRIP_ROWS, (int) (STRIP_BYTES / rowBytes));
+        return rows * sampleSize;
+    }
+
+    static long estimateDecodeBytes(int width, int height, int sampleSize, Bitmap.Config config) {
+        int sampledWidth = (width + sampleSize - 1) / sampleSize;
+        int sampledHeight = (height + sampleSize - 1) / sampleSize;
+        return BitmapPool.bytesOf(sampledWidth, sampledHeight, config);
+    }
+
+    /**
+     * @param isJpeg TRUE if the source is a JPEG, so it has no alpha channel
+     */
+    private Bitmap.Config resolveConfig(boolean isJpeg) {
+        switch (mDecodeConfig) {
+            case PhotoOptions.DECODE_CONFIG_RGB_565:
+                return Bitmap.Config.RGB_565;
+            case PhotoOptions.DECODE_CONFIG_AUTO:
+                // the source has no alpha, so nothing is lost except colour depth; worth it on small heaps
+                return isJpeg && Runtime.getRuntime().maxMemory() <= LOW_MEMORY_HEAP_BYTES ?
+                        Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+            case PhotoOptions.DECODE_CONFIG_ARGB_8888:
+            default:
+                return Bitmap.Config.ARGB_8888;
         }
-        mCallback.onFinishPhotoProcessing();
-        mCallback.onPhotoCaptured(mImageFile);
-        mCallback = null;
     }
 
-    @Override
-    protected void onCancelled() {
-        super.onCancelled();
-        mCallback.onFinishPhotoProcessing();
-        mCallback.onPhotoError(IPhotoCallbacks.ERR_CANCELLED);
-        mCallback = null;
+    private static long getDecodeMemoryBudget() {
+        return Math.min(MAX_DECODE_BUDGET_BYTES, Runtime.getRuntime().maxMemory() / 8);
     }
 
-    private Bitmap rotateIfNeeded(Bitmap bitmap) {
-        if (!mRotate) {
-            return bitmap;
+    private void throwIfCancelled() {
+        if (mCancelled || Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
         }
+    }
+
+    private void throwIfCancelled(Bitmap bitmap) {
+        if (mCancelled || Thread.currentThread().isInterrupted()) {
+            mPool.put(bitmap);
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * @return the largest power of two which keeps the larger side of the image not smaller than maxDimension
+     */
+    static int computeSampleSize(int width, int height, int maxDimension) {
+        if (maxDimension <= 0) {
+            return 1;
+        }
+        int largerSide = Math.max(width, height);
+        int sampleSize = 1;
+        while (largerSide / (sampleSize * 2) >= maxDimension) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * @return scale factor which makes the larger side equal to maxDimension; never upscales
+     */
+    static float computeScale(int width, int height, int maxDimension) {
+        int largerSide = Math.max(width, height);
+        return largerSide > maxDimension && maxDimension > 0 ? (float) maxDimension / largerSide : 1f;
+    }
+
+    private int readOrientation() {
         try {
             ExifInterface ei = new ExifInterface(mImageFile.getAbsolutePath());
-            int orientation = ei.getAttributeInt(ExifInterface.TAG_ORIENTATION,
-                    ExifInterface.ORIENTATION_UNDEFINED);
-            switch (orientation) {
-                case ExifInterface.ORIENTATION_ROTATE_90:
-                    return rotateImage(bitmap, 90);
-                case ExifInterface.ORIENTATION_ROTATE_180:
-                    return rotateImage(bitmap, 180);
-                case ExifInterface.ORIENTATION_ROTATE_270:
-                    return rotateImage(bitmap, 270);
-                case ExifInterface.ORIENTATION_NORMAL:
-                default:
-                    return bitmap;
-            }
+            return ei.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED);
         } catch (Exception e) {
             e.printStackTrace();
-            return bitmap;
+            return ExifInterface.ORIENTATION_UNDEFINED;
         }
     }
 
-    private Bitmap rotateImage(Bitmap bitmap, int angle) {
+    /**
+     * @param recycleSource TRUE to return the source bitmap to the pool
+     */
+    private Bitmap transform(Bitmap bitmap, float scale, int angle, boolean recycleSource) {
+        if (scale == 1f && angle == 0) {
+            return bitmap;
+        }
         Matrix matrix = new Matrix();
+        matrix.postScale(scale, scale);
         matrix.postRotate(angle);
-        Bitmap resultBitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-        bitmap.recycle();
+        RectF bounds = new RectF(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        matrix.mapRect(bounds);
+        matrix.postTranslate(-bounds.left, -bounds.top);
+
+        Bitmap.Config config = null == bitmap.getConfig() ? Bitmap.Config.ARGB_8888 : bitmap.getConfig();
+        Bitmap resultBitmap = obtainBitmap(Math.round(bounds.width()), Math.round(bounds.height()), config);
+        new Canvas(resultBitmap).drawBitmap(bitmap, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        if (recycleSource) {
+            mPool.put(bitmap);
+        }
         return resultBitmap;
     }
+
+    /**
+     * @return a bitmap from the pool or a new one
+     */
+    private Bitmap obtainBitmap(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = mPool.get(width, height, config);
+        if (null == bitmap) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * Let the decoder reuse a pooled bitmap; the size of the sampled image is known only approximately,
+     * so it's supported starting with API 19 only.
+     */
+    private void setDecodeTarget(BitmapFactory.Options options, int width, int height) {
+        options.inMutable = true;
+        if (Build.VERSION.SDK_INT >= 19) {
+            int sampleSize = Math.max(1, options.inSampleSize);
+            options.inBitmap = mPool.get((width + sampleSize - 1) / sampleSize,
+                    (height + sampleSize - 1) / sampleSize, mConfig);
+        }
+    }
 }
@@ -0,0 +1,32 @@
+package com.github.romychab.common.camera;
+
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Result of {@link ImageProcessingEngine#processWithDerivatives(File, PhotoOptions)}:
+ * the processed photo and its derivatives (see {@link PhotoOptions#addDerivative(PhotoOptions.Derivative)}).
+ */
+public class ProcessedPhoto {
+
+    private final File mFile;
+    private final Map<String, File> mDerivativeFiles;
+
+    ProcessedPhoto(File file, Map<String, File> derivativeFiles) {
+        mFile = file;
+        mDerivativeFiles = Collections.unmodifiableMap(derivativeFiles);
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * @return files of derivatives by their suffixes, in the order of specs; empty if there are no derivatives
+     */
+    public Map<String, File> getDerivativeFiles() {
+        return mDerivativeFiles;
+    }
+}
@@ -2,6 +2,7 @@ package com.github.romychab.common.dialogs;
 
 
 import android.app.Dialog;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.os.Bundle;
 import android.os.Parcel;
@@ -9,12 +10,43 @@ import android.os.Parcelable;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.DialogFragment;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentTransaction;
 import android.support.v7.app.AlertDialog;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.github.romychab.common.utils.targets.TargetResolver;
+
+import io.reactivex.Single;
+
 /**
  * AlertDialog impl. inside DialogFragment
+ *
+ * Results are delivered either to {@link IAlertDialogCallbacks} of the target (see {@link #newInstance(Options, String)})
+ * or to {@link DialogResultBus} (see {@link #newInstanceForResult(Options)}), so a presenter can receive them
+ * directly and keep waiting for them during configuration changes:
+ *
+ * <pre>{@code
+ *
+ *   // presenter
+ *   void onDeleteClicked() {
+ *       getViewState().showDeleteConfirmation(DELETE_DIALOG_TAG);
+ *       registerDisposable(AlertDialogFragment.observeResult(DELETE_DIALOG_TAG)
+ *           .filter(which -> which == DialogInterface.BUTTON_POSITIVE)
+ *           .subscribe(which -> deleteItem()));
+ *   }
+ *
+ *   // view
+ *   public void showDeleteConfirmation(String tag) {
+ *       AlertDialogFragment.newInstanceForResult(options).show(getSupportFragmentManager(), tag);
+ *   }
+ *
+ * }</pre>
+ *
+ * Showing a dialog for result drops an undelivered result of a previous dialog with the same tag,
+ * so a new confirmation never receives a stale answer. Undelivered results are also dropped
+ * when the activity hosting the dialog is finishing.
  */
 public class AlertDialogFragment
         extends DialogFragment
@@ -25,9 +57,13 @@ public class AlertDialogFragment
 
     private static final String ARG_OPTIONS = "OPTIONS";
     private static final String ARG_TARGET_TAG = "TARGET";
+    private static final String ARG_RESULT_BUS = "RESULT_BUS";
 
     protected Options mOptions;
 
+    private final TargetResolver<IAlertDialogCallbacks> mTargetResolver =
+            TargetResolver.of(this, IAlertDialogCallbacks.class, EMPTY_CALLBACKS);
+
     /**
      * Create a new instance of {@link AlertDialog}
      * @param options options for a dialog, such as title, message, etc.
@@ -45,6 +81,29 @@ public class AlertDialogFragment
         return fragment;
     }
 
+    /**
+     * Create a new instance of {@link AlertDialog} that delivers its result to {@link DialogResultBus}
+     * under the tag of the dialog instead of {@link IAlertDialogCallbacks}.
+     * @param options options for a dialog, such as title, message, etc.
+     * @see #observeResult(String)
+     */
+    public static AlertDialogFragment newInstanceForResult(Options options) {
+        AlertDialogFragment fragment = newInstance(options, null);
+        fragment.getArguments().putBoolean(ARG_RESULT_BUS, true);
+        return fragment;
+    }
+
+    /**
+     * Wait for a result of a dialog created by {@link #newInstanceForResult(Options)}.
+     * @param dialogTag tag with which the dialog is shown
+     * @return single emitting the clicked button ({@link DialogInterface#BUTTON_POSITIVE},
+     *         {@link DialogInterface#BUTTON_NEGATIVE} or {@link DialogInterface#BUTTON_NEUTRAL})
+     *         or {@link DialogResultBus#RESULT_CANCELLED}; the result is emitted on the main thread
+     */
+    public static Single<Integer> observeResult(String dialogTag) {
+        return DialogResultBus.getInstance().observe(dialogTag);
+    }
+
     @NonNull
     @Override
     public Dialog onCreateDialog(Bundle savedInstanceState) {
@@ -54,21 +113,64 @@ public class AlertDialogFragment
         return create(getOptions());
     }
 
+    @Override
+    public void onAttach(Context context) {
+        super.onAttach(context);
+        mTargetResolver.invalidate();
+    }
+
+    @Override
+    public void onDetach() {
+        super.onDetach();
+        mTargetResolver.invalidate();
+    }
+
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
         outState.putParcelable(ARG_OPTIONS, getOptions());
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (isResultBusUsed() && null != getActivity() && getActivity().isFinishing()) {
+            // nobody will subscribe to the result of this dialog anymore
+            DialogResultBus.getInstance().clear(getTag());
+        }
+    }
+
+    @Override
+    public void show(FragmentManager manager, String tag) {
+        clearPreviousResult(tag);
+        super.show(manager, tag);
+    }
+
+    @Override
+    public int show(FragmentTransaction transaction, String tag) {
+        clearPreviousResult(tag);
+        return super.show(transaction, tag);
+    }
+
     @Override
     public void onCancel(DialogInterface dialog) {
         super.onCancel(dialog);
-        getCallbacks().onAlertDialogCancelled(getTag());
+        if (isResultBusUsed()) {
+            DialogResultBus.getInstance().post(getTag(), DialogResultBus.RESULT_CANCELLED);
+        }
+        else {
+            getCallbacks().onAlertDialogCancelled(getTag());
+        }
     }
 
     @Override
     public void onClick(DialogInterface dialog, int which) {
-        getCallbacks().onAlertDialogCallback(getTag(), which);
+        if (isResultBusUsed()) {
+            DialogResultBus.getInstance().post(getTag(), which);
+        }
+        else {
+            getCallbacks().onAlertDialogCallback(getTag(), which);
+        }
     }
 
     // --- protected
@@ -103,9 +205,18 @@ public class AlertDialogFragment
         return getArguments().getString(ARG_TARGET_TAG);
     }
 
+    private boolean isResultBusUsed() {
+        return getArguments().getBoolean(ARG_RESULT_BUS, false);
+    }
+
+    private void clearPreviousResult(String tag) {
+        if (isResultBusUsed()) {
+            DialogResultBus.getInstance().clear(tag);
+        }
+    }
+
     private IAlertDialogCallbacks getCallbacks() {
-        Object target = DialogFragmentUtils.searchTarget(this, getTargetTag(), EMPTY_CALLBACKS);
-        return target instanceof IAlertDialogCallbacks ? (IAlertDialogCallbacks) target : EMPTY_CALLBACKS;
+        return mTargetResolver.resolve(getTargetTag());
     }
 
     // ---
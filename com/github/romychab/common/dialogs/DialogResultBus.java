@@ -0,0 +1,82 @@
+package com.github.romychab.common.dialogs;
+
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+
+/**
+ * Process-wide bus that delivers results of dialogs to subscribers (usually presenters) by tag of a dialog.
+ *
+ * The bus doesn't reference activities or fragments, so a subscription made by a presenter survives
+ * configuration changes. A result posted while nobody is subscribed is kept until the next subscription
+ * to the same tag (e.g. a dialog restored after process death is answered before the presenter subscribes),
+ * or until it's dropped by {@link #clear(String)}: {@link AlertDialogFragment} clears it when a new dialog
+ * with the same tag is shown and when the activity hosting the dialog is finishing.
+ */
+public class DialogResultBus {
+
+    /**
+     * Result of a dialog that has been cancelled without clicking any button
+     */
+    public static final int RESULT_CANCELLED = 0;
+
+    private static final DialogResultBus INSTANCE = new DialogResultBus();
+
+    private final Map<String, Integer> mPendingResults = new HashMap<>();
+
+    private final Map<String, SingleEmitter<Integer>> mSubscribers = new HashMap<>();
+
+    public static DialogResultBus getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return single that emits the next result of a dialog with the specified tag;
+     *         only the latest subscriber for a tag receives the result
+     */
+    public Single<Integer> observe(final String dialogTag) {
+        return Single.create(emitter -> {
+            Integer result;
+            synchronized (this) {
+                result = mPendingResults.remove(dialogTag);
+                if (null == result) {
+                    mSubscribers.put(dialogTag, emitter);
+                    emitter.setCancellable( () -> removeSubscriber(dialogTag, emitter) );
+                }
+            }
+            if (null != result) {
+                emitter.onSuccess(result);
+            }
+        });
+    }
+
+    public void post(String dialogTag, int result) {
+        SingleEmitter<Integer> emitter;
+        synchronized (this) {
+            emitter = mSubscribers.remove(dialogTag);
+            if (null == emitter || emitter.isDisposed()) {
+                mPendingResults.put(dialogTag, result);
+                return;
+            }
+        }
+        emitter.onSuccess(result);
+    }
+
+    /**
+     * Drop a result that hasn't been delivered yet.
+     */
+    public synchronized void clear(String dialogTag) {
+        mPendingResults.remove(dialogTag);
+    }
+
+    // --- private
+
+    private synchronized void removeSubscriber(String dialogTag, SingleEmitter<Integer> emitter) {
+        if (mSubscribers.get(dialogTag) == emitter) {
+            mSubscribers.remove(dialogTag);
+        }
+    }
+}
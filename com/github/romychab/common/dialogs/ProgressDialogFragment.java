@@ -3,6 +3,7 @@ package com.github.romychab.common.dialogs;
 
 import android.app.Dialog;
 import android.app.ProgressDialog;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.os.Bundle;
 import android.os.Handler;
@@ -12,10 +13,20 @@ import android.os.Parcelable;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.DialogFragment;
+import android.text.TextUtils;
 import android.util.Log;
+import android.view.Choreographer;
+
+import com.github.romychab.common.utils.targets.TargetResolver;
+
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * ProgressDialog implementation inside a DialogFragment.
+ *
+ * Update methods may be called from any thread and as often as needed: changes are coalesced
+ * and applied at most once per frame, only changed properties are passed to the dialog.
+ * Options are mutated and copied under a lock, so the dialog never shows a half-applied update.
  */
 public class ProgressDialogFragment extends DialogFragment {
 
@@ -27,7 +38,14 @@ public class ProgressDialogFragment extends DialogFragment {
     protected Options mOptions;
     protected ProgressDialog mProgressDialog;
 
-    private boolean mUpdatingInProgress = false;
+    private Options mAppliedOptions; // values currently displayed by mProgressDialog
+
+    private final Object mOptionsLock = new Object();
+
+    private final TargetResolver<IProgressCallbacks> mTargetResolver =
+            TargetResolver.of(this, IProgressCallbacks.class, EMPTY_CALLBACKS);
+
+    private final AtomicBoolean mUpdateScheduled = new AtomicBoolean(false);
 
     private Handler mUiHandler = new Handler(Looper.getMainLooper());
 
@@ -51,19 +69,42 @@ public class ProgressDialogFragment extends DialogFragment {
     @Override
     public Dialog onCreateDialog(Bundle savedInstanceState) {
         if (null != savedInstanceState) {
-            mOptions = savedInstanceState.getParcelable(ARG_OPTIONS);
+            synchronized (mOptionsLock) {
+                mOptions = savedInstanceState.getParcelable(ARG_OPTIONS);
+            }
         }
         mProgressDialog = createDialog();
 
-        updateDialog(mProgressDialog, getOptions());
+        mAppliedOptions = copyOptions();
+        updateDialog(mProgressDialog, mAppliedOptions);
 
         return mProgressDialog;
     }
 
+    @Override
+    public void onAttach(Context context) {
+        super.onAttach(context);
+        mTargetResolver.invalidate();
+    }
+
+    @Override
+    public void onDetach() {
+        super.onDetach();
+        mTargetResolver.invalidate();
+    }
+
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putParcelable(ARG_OPTIONS, mOptions);
+        outState.putParcelable(ARG_OPTIONS, copyOptions());
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mUpdateScheduled.set(true); // updates made after this point don't schedule anything
+        mUiHandler.removeCallbacks(mScheduleFrame);
+        Choreographer.getInstance().removeFrameCallback(mApplyUpdates);
     }
 
     @Override
@@ -75,25 +116,42 @@ public class ProgressDialogFragment extends DialogFragment {
     // --- public
 
     public ProgressDialogFragment updateMaxValue(int newMaxValue) {
-        getOptions().mMaxValue = newMaxValue;
+        synchronized (mOptionsLock) {
+            getOptions().mMaxValue = newMaxValue;
+        }
         commitUpdates();
         return this;
     }
 
     public ProgressDialogFragment updateValue(int newValue) {
-        getOptions().mValue = newValue;
+        synchronized (mOptionsLock) {
+            getOptions().mValue = newValue;
+        }
         commitUpdates();
         return this;
     }
 
     public ProgressDialogFragment updateMessage(String newMessage) {
-        getOptions().mMessage = newMessage;
+        synchronized (mOptionsLock) {
+            getOptions().mMessage = newMessage;
+        }
+        commitUpdates();
+        return this;
+    }
+
+    public ProgressDialogFragment updateIndeterminate(boolean indeterminate) {
+        synchronized (mOptionsLock) {
+            getOptions().mIndeterminate = indeterminate;
+        }
         commitUpdates();
         return this;
     }
 
     // --- protected
 
+    /**
+     * Apply all options to a newly created dialog.
+     */
     protected void updateDialog(ProgressDialog progressDialog, Options options) {
         progressDialog.setTitle(options.mTitle);
         progressDialog.setMessage(options.mMessage);
@@ -102,12 +160,42 @@ public class ProgressDialogFragment extends DialogFragment {
         progressDialog.setProgress(options.mValue);
     }
 
+    /**
+     * Apply options that differ from the displayed ones.
+     * @param appliedOptions options currently displayed by the dialog; must be updated by this method
+     */
+    protected void updateDialog(ProgressDialog progressDialog, Options options, Options appliedOptions) {
+        if (!TextUtils.equals(options.mTitle, appliedOptions.mTitle)) {
+            progressDialog.setTitle(options.mTitle);
+            appliedOptions.mTitle = options.mTitle;
+        }
+        if (!TextUtils.equals(options.mMessage, appliedOptions.mMessage)) {
+            progressDialog.setMessage(options.mMessage);
+            appliedOptions.mMessage = options.mMessage;
+        }
+        if (options.mIndeterminate != appliedOptions.mIndeterminate) {
+            progressDialog.setIndeterminate(options.mIndeterminate);
+            appliedOptions.mIndeterminate = options.mIndeterminate;
+        }
+        if (options.mMaxValue != appliedOptions.mMaxValue) {
+            progressDialog.setMax(options.mMaxValue);
+            appliedOptions.mMaxValue = options.mMaxValue;
+        }
+        if (options.mValue != appliedOptions.mValue) {
+            progressDialog.setProgress(options.mValue);
+            appliedOptions.mValue = options.mValue;
+        }
+    }
+
     protected ProgressDialog createDialog() {
         return new ProgressDialog(getContext());
     }
 
     // --- private
 
+    /**
+     * Must be called under {@link #mOptionsLock}.
+     */
     private Options getOptions() {
         if (null == mOptions) {
             mOptions = getArguments().getParcelable(ARG_OPTIONS);
@@ -115,33 +203,61 @@ public class ProgressDialogFragment extends DialogFragment {
         return mOptions;
     }
 
+    /**
+     * @return consistent snapshot of options that may be read without the lock
+     */
+    private Options copyOptions() {
+        synchronized (mOptionsLock) {
+            return new Options(getOptions());
+        }
+    }
+
     private String getTargetTag() {
         return getArguments().getString(ARG_TARGET_TAG);
     }
 
     private IProgressCallbacks getCallbacks() {
-        Object target = DialogFragmentUtils.searchTarget(this, getTargetTag(), EMPTY_CALLBACKS);
-        return target instanceof IProgressCallbacks ? (IProgressCallbacks) target : EMPTY_CALLBACKS;
+        return mTargetResolver.resolve(getTargetTag());
     }
 
     private void commitUpdates() {
-        if (mUpdatingInProgress) {
-            return;
+        if (!mUpdateScheduled.compareAndSet(false, true)) {
+            return; // changes will be applied with the already scheduled frame
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            Choreographer.getInstance().postFrameCallback(mApplyUpdates);
+        }
+        else {
+            mUiHandler.post(mScheduleFrame);
         }
-        mUiHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                if (null != mProgressDialog) {
-                    updateDialog(mProgressDialog, getOptions());
-                }
-                else {
-                    getArguments().putParcelable(ARG_OPTIONS, getOptions());
-                }
-                mUpdatingInProgress = false;
-            }
-        });
     }
 
+    private void applyUpdates() {
+        // reset the flag before reading options, so changes made during applying schedule one more frame
+        mUpdateScheduled.set(false);
+        Options options = copyOptions();
+        if (null != mProgressDialog) {
+            updateDialog(mProgressDialog, options, mAppliedOptions);
+        }
+        else {
+            getArguments().putParcelable(ARG_OPTIONS, options);
+        }
+    }
+
+    private final Runnable mScheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(mApplyUpdates);
+        }
+    };
+
+    private final Choreographer.FrameCallback mApplyUpdates = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            applyUpdates();
+        }
+    };
+
     // ---
 
     public interface IProgressCallbacks {
@@ -210,6 +326,14 @@ public class ProgressDialogFragment extends DialogFragment {
 
         public Options() { }
 
+        public Options(Options options) {
+            this.mTitle = options.mTitle;
+            this.mMessage = options.mMessage;
+            this.mMaxValue = options.mMaxValue;
+            this.mValue = options.mValue;
+            this.mIndeterminate = options.mIndeterminate;
+        }
+
         protected Options(Parcel in) {
             this.mTitle = in.readString();
             this.mMessage = in.readString();
@@ -3,6 +3,7 @@ package com.github.romychab.common.locations;
 import android.Manifest;
 import android.app.Activity;
 import android.app.Dialog;
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.location.Location;
@@ -14,9 +15,9 @@ import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.app.FragmentManager;
 import android.support.v4.content.ContextCompat;
-import android.text.TextUtils;
 import android.util.Log;
 
+import com.github.romychab.common.utils.targets.TargetResolver;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 import com.google.android.gms.common.api.GoogleApiClient;
@@ -86,7 +87,8 @@ public class LocationFragment
 
     private String mTag;
 
-    private ICallback mCallback;
+    private final TargetResolver<ICallback> mTargetResolver =
+            TargetResolver.of(this, ICallback.class, EMPTY_CALLBACKS);
 
     private GoogleApiClient mClient;
 
@@ -144,9 +146,15 @@ public class LocationFragment
     }
 
     @Override
-    public void onActivityCreated(@Nullable Bundle savedInstanceState) {
-        super.onActivityCreated(savedInstanceState);
-        mCallback = resolveTarget(getTargetTag());
+    public void onAttach(Context context) {
+        super.onAttach(context);
+        mTargetResolver.invalidate();
+    }
+
+    @Override
+    public void onDetach() {
+        super.onDetach();
+        mTargetResolver.invalidate();
     }
 
     @Override
@@ -342,7 +350,7 @@ public class LocationFragment
                                 ContextCompat.checkSelfPermission(getContext(), Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
                             LocationServices.FusedLocationApi.requestLocationUpdates(mClient, getLocationRequest(), mLocationListener);
                         }
-                        mCallback.onLocationServicesReady();
+                        getCallback().onLocationServicesReady();
                         break;
                     case LocationSettingsStatusCodes.RESOLUTION_REQUIRED:
                         try {
@@ -385,20 +393,8 @@ public class LocationFragment
         return locationRequest;
     }
 
-    private ICallback resolveTarget(String tag) {
-        if (TextUtils.isEmpty(tag)) {
-            if (getActivity() instanceof ICallback) {
-                return (ICallback) getActivity();
-            }
-            return EMPTY_CALLBACKS;
-        }
-        else {
-            Fragment targetFragment = getFragmentManager().findFragmentByTag(tag);
-            if (null == targetFragment || !(targetFragment instanceof ICallback)) {
-                return EMPTY_CALLBACKS;
-            }
-            return (ICallback) targetFragment;
-        }
+    private ICallback getCallback() {
+        return mTargetResolver.resolve(getTargetTag());
     }
 
     private String getTargetTag() {
@@ -443,7 +439,7 @@ public class LocationFragment
     }
 
     private void notifyError(LocationError error) {
-        mCallback.onLocationError(error);
+        getCallback().onLocationError(error);
         for (ILocationListener listener : mListeners) {
             listener.onLocationError(error);
         }
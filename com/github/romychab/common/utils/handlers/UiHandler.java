@@ -1,6 +1,7 @@
 package com.github.romychab.common.utils.handlers;
 
 import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
 
 public class UiHandler implements IHandler {
@@ -10,6 +11,14 @@ public class UiHandler implements IHandler {
         mHandler = handler;
     }
 
+    /**
+     * @return process-wide handler bound to the main looper; it's created lazily on the first call
+     *         and may be obtained from any thread
+     */
+    public static IHandler main() {
+        return MainHolder.INSTANCE;
+    }
+
     @Override
     public void post(Runnable runnable) {
         mHandler.post(runnable);
@@ -28,7 +37,7 @@ public class UiHandler implements IHandler {
     @Override
     public void postDelayed(long millis, Runnable runnable, Object token) {
         Message message = Message.obtain(mHandler, runnable);
-        message.obj = this; // Used as token for batch disposal of this worker's runnables.
+        message.obj = token; // Used as token for batch disposal of this worker's runnables.
         mHandler.sendMessageDelayed(message, millis);
     }
 
@@ -36,4 +45,8 @@ public class UiHandler implements IHandler {
     public void cancel(Object token) {
         mHandler.removeCallbacksAndMessages(token);
     }
+
+    private static final class MainHolder {
+        static final UiHandler INSTANCE = new UiHandler(new Handler(Looper.getMainLooper()));
+    }
 }
@@ -1,15 +1,65 @@
 package com.github.romychab.common.utils.resources;
 
 import android.content.Context;
+import android.content.res.Configuration;
+import android.util.SparseArray;
 
+import java.text.DecimalFormatSymbols;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Resource resolver based on {@link Context}.
+ *
+ * Format strings used with numeric arguments ({@link #getString(int, long)} etc.) are compiled once per
+ * resource ID and appended into a reusable per-thread builder, so formatting doesn't allocate parsers,
+ * argument arrays and boxed numbers.
+ *
+ * Results of {@link #getResourceId(String, String)} are kept in a bounded LRU cache, because
+ * {@link android.content.res.Resources#getIdentifier(String, String, String)} is slow.
+ *
+ * All caches are dropped when configuration changes.
+ */
 public class AndroidResourceResolver
     implements
         IResourceResolver {
 
+    public static final int DEFAULT_MAX_CACHED_IDS = 256;
+
+    private static final StringTemplate NOT_COMPILABLE = StringTemplate.compile("");
+
     private Context mContext;
 
+    private final Object mLock = new Object();
+
+    private final SparseArray<StringTemplate> mTemplates = new SparseArray<>();
+    private final Map<String, Integer> mIds;
+
+    private Configuration mConfiguration; // configuration for which caches are valid
+    private boolean mAsciiDigits;
+
+    private final ThreadLocal<StringBuilder> mBuilders = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(64);
+        }
+    };
+
     public AndroidResourceResolver(Context context) {
+        this(context, DEFAULT_MAX_CACHED_IDS);
+    }
+
+    /**
+     * @param maxCachedIds max number of (type, name) -&gt; ID mappings kept in memory
+     */
+    public AndroidResourceResolver(Context context, final int maxCachedIds) {
         mContext = context;
+        mIds = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > maxCachedIds;
+            }
+        };
     }
 
     @Override
@@ -22,8 +72,115 @@ public class AndroidResourceResolver
         return mContext.getString(resId, args);
     }
 
+    @Override
+    public String getString(int resId, long arg) {
+        StringTemplate template = getTemplate(resId, 1, arg, 0);
+        if (null == template) {
+            return mContext.getString(resId, arg);
+        }
+        StringBuilder builder = obtainBuilder();
+        template.appendTo(builder, arg);
+        return builder.toString();
+    }
+
+    @Override
+    public String getString(int resId, long arg1, long arg2) {
+        StringTemplate template = getTemplate(resId, 2, arg1, arg2);
+        if (null == template) {
+            return mContext.getString(resId, arg1, arg2);
+        }
+        StringBuilder builder = obtainBuilder();
+        template.appendTo(builder, arg1, arg2);
+        return builder.toString();
+    }
+
+    @Override
+    public StringBuilder appendString(StringBuilder out, int resId, long arg1, long arg2) {
+        StringTemplate template = getTemplate(resId, 2, arg1, arg2);
+        if (null == template) {
+            return out.append(mContext.getString(resId, arg1, arg2));
+        }
+        template.appendTo(out, arg1, arg2);
+        return out;
+    }
+
     @Override
     public int getResourceId(String resourceType, String resourceName) {
-        return mContext.getResources().getIdentifier(resourceName, resourceType, mContext.getPackageName());
+        synchronized (mLock) {
+            validateConfiguration();
+            return findResourceId(resourceType, resourceName);
+        }
+    }
+
+    @Override
+    public int[] getResourceIds(String resourceType, String... resourceNames) {
+        int[] ids = new int[resourceNames.length];
+        synchronized (mLock) {
+            validateConfiguration();
+            for (int i = 0; i < resourceNames.length; i++) {
+                ids[i] = findResourceId(resourceType, resourceNames[i]);
+            }
+        }
+        return ids;
+    }
+
+    // --- private
+
+    /**
+     * @return compiled template or NULL if the string has to be formatted by {@link Context#getString(int, Object...)}
+     */
+    private StringTemplate getTemplate(int resId, int argsCount, long arg1, long arg2) {
+        if (arg1 < 0 || arg2 < 0) {
+            return null; // the sign is locale-dependent
+        }
+        StringTemplate template;
+        synchronized (mLock) {
+            validateConfiguration();
+            if (!mAsciiDigits) {
+                return null; // locale uses its own digits
+            }
+            template = mTemplates.get(resId);
+            if (null == template) {
+                template = StringTemplate.compile(mContext.getString(resId));
+                if (null == template) {
+                    template = NOT_COMPILABLE;
+                }
+                mTemplates.put(resId, template);
+            }
+        }
+        if (template == NOT_COMPILABLE || template.getArgsCount() > argsCount) {
+            return null;
+        }
+        return template;
+    }
+
+    // must be called under mLock
+    private int findResourceId(String resourceType, String resourceName) {
+        String key = resourceType + '/' + resourceName; // names can't contain '/'
+        Integer id = mIds.get(key);
+        if (null == id) {
+            // unknown names are cached too, they are as slow as the known ones
+            id = mContext.getResources().getIdentifier(resourceName, resourceType, mContext.getPackageName());
+            mIds.put(key, id);
+        }
+        return id;
+    }
+
+    // must be called under mLock
+    private void validateConfiguration() {
+        Configuration configuration = mContext.getResources().getConfiguration();
+        if (null != mConfiguration && mConfiguration.equals(configuration)) {
+            return;
+        }
+        mConfiguration = new Configuration(configuration);
+        mAsciiDigits = DecimalFormatSymbols.getInstance(configuration.locale).getZeroDigit() == '0';
+        mTemplates.clear();
+        mIds.clear();
+    }
+
+    private StringBuilder obtainBuilder() {
+        StringBuilder builder = mBuilders.get();
+        builder.setLength(0);
+        return builder;
     }
 }
@@ -7,6 +7,43 @@ public interface IResourceResolver {
 
     String getString(int resId, Object ... args);
 
+    /**
+     * Format a string with one numeric argument (e.g. "Uploading %d"), allocating only the result.
+     * Falls back to {@link #getString(int, Object...)} by default.
+     */
+    default String getString(int resId, long arg) {
+        return getString(resId, new Object[] { arg });
+    }
+
+    /**
+     * Format a string with two numeric arguments (e.g. "Uploading %1$d/%2$d"), allocating only the result.
+     * Falls back to {@link #getString(int, Object...)} by default.
+     */
+    default String getString(int resId, long arg1, long arg2) {
+        return getString(resId, new Object[] { arg1, arg2 });
+    }
+
+    /**
+     * Append a string formatted with numeric arguments to the builder without allocations.
+     * Falls back to {@link #getString(int, Object...)} by default.
+     * @return the same builder
+     */
+    default StringBuilder appendString(StringBuilder out, int resId, long arg1, long arg2) {
+        return out.append(getString(resId, new Object[] { arg1, arg2 }));
+    }
+
     int getResourceId(String resourceType, String resourceName);
 
+    /**
+     * Batch version of {@link #getResourceId(String, String)}; looks the names up one by one by default.
+     * @return IDs in the same order as names; 0 for unknown names
+     */
+    default int[] getResourceIds(String resourceType, String... resourceNames) {
+        int[] ids = new int[resourceNames.length];
+        for (int i = 0; i < resourceNames.length; i++) {
+            ids[i] = getResourceId(resourceType, resourceNames[i]);
+        }
+        return ids;
+    }
+
 }
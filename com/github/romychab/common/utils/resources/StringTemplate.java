@@ -0,0 +1,114 @@
+package com.github.romychab.common.utils.resources;
+
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Precompiled format string.
+ *
+ * Supports only plain specifiers: %d, %s, %1$d, %1$s, %% and %n. Strings with other specifiers
+ * (flags, width, precision, other conversions) are not compiled and must be formatted by
+ * {@link String#format(String, Object...)}.
+ */
+class StringTemplate {
+
+    private final String[] mLiterals; // mLiterals[i] goes before mArgs[i], the last one goes after all args
+    private final int[] mArgs; // indices of arguments
+
+    private final int mArgsCount;
+
+    private StringTemplate(String[] literals, int[] args) {
+        mLiterals = literals;
+        mArgs = args;
+        int count = 0;
+        for (int arg : args) {
+            count = Math.max(count, arg + 1);
+        }
+        mArgsCount = count;
+    }
+
+    /**
+     * @return compiled template or NULL if the format contains unsupported specifiers
+     */
+    @Nullable
+    static StringTemplate compile(String format) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> args = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int nextArg = 0;
+        int length = format.length();
+        int i = 0;
+        while (i < length) {
+            char c = format.charAt(i++);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            if (i == length) {
+                return null;
+            }
+            c = format.charAt(i++);
+            if (c == '%') {
+                literal.append('%');
+                continue;
+            }
+            if (c == 'n') {
+                literal.append('\n');
+                continue;
+            }
+
+            int argIndex;
+            if (c >= '1' && c <= '9') {
+                // explicit index: %1$d
+                int index = c - '0';
+                while (i < length && Character.isDigit(format.charAt(i))) {
+                    index = index * 10 + (format.charAt(i++) - '0');
+                }
+                if (i + 1 >= length || format.charAt(i) != '$') {
+                    return null; // width or something else
+                }
+                i++;
+                c = format.charAt(i++);
+                argIndex = index - 1;
+            }
+            else {
+                argIndex = nextArg++;
+            }
+            if (c != 'd' && c != 's') {
+                return null;
+            }
+            literals.add(literal.toString());
+            literal.setLength(0);
+            args.add(argIndex);
+        }
+        literals.add(literal.toString());
+
+        int[] argsArray = new int[args.size()];
+        for (int k = 0; k < argsArray.length; k++) {
+            argsArray[k] = args.get(k);
+        }
+        return new StringTemplate(literals.toArray(new String[literals.size()]), argsArray);
+    }
+
+    /**
+     * @return max index of argument used by the template + 1
+     */
+    int getArgsCount() {
+        return mArgsCount;
+    }
+
+    void appendTo(StringBuilder out, long arg0) {
+        appendTo(out, arg0, 0);
+    }
+
+    void appendTo(StringBuilder out, long arg0, long arg1) {
+        for (int i = 0; i < mArgs.length; i++) {
+            out.append(mLiterals[i]);
+            out.append(mArgs[i] == 0 ? arg0 : arg1);
+        }
+        out.append(mLiterals[mArgs.length]);
+    }
+}
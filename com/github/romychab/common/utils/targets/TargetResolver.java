@@ -0,0 +1,105 @@
+package com.github.romychab.common.utils.targets;
+
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Finds a target that receives callbacks of a fragment: a fragment with the specified tag
+ * or the host activity (if the tag is empty).
+ *
+ * The found target is cached through a weak reference, so repeated callbacks don't search
+ * the fragment manager again and the cache never keeps a destroyed activity alive.
+ * Call {@link #invalidate()} when the fragment is attached/detached.
+ * Must be used from the main thread.
+ *
+ * @param <T> callback interface
+ */
+public class TargetResolver<T> {
+
+    private final Class<T> mType;
+    private final T mDefaultTarget;
+    private final ILookup mLookup;
+
+    private WeakReference<T> mCachedTarget;
+
+    /**
+     * Resolver for a fragment from the support library.
+     */
+    public static <T> TargetResolver<T> of(final android.support.v4.app.Fragment fragment, Class<T> type, T defaultTarget) {
+        return new TargetResolver<>(type, defaultTarget, new ILookup() {
+            @Override
+            public Object lookup(String targetTag) {
+                if (TextUtils.isEmpty(targetTag)) {
+                    return fragment.getActivity();
+                }
+                android.support.v4.app.FragmentManager manager = fragment.getFragmentManager();
+                return null == manager ? null : manager.findFragmentByTag(targetTag);
+            }
+        });
+    }
+
+    /**
+     * Resolver for a native fragment.
+     */
+    public static <T> TargetResolver<T> of(final android.app.Fragment fragment, Class<T> type, T defaultTarget) {
+        return new TargetResolver<>(type, defaultTarget, new ILookup() {
+            @Override
+            public Object lookup(String targetTag) {
+                if (TextUtils.isEmpty(targetTag)) {
+                    return fragment.getActivity();
+                }
+                android.app.FragmentManager manager = fragment.getFragmentManager();
+                return null == manager ? null : manager.findFragmentByTag(targetTag);
+            }
+        });
+    }
+
+    TargetResolver(Class<T> type, T defaultTarget, ILookup lookup) {
+        mType = type;
+        mDefaultTarget = defaultTarget;
+        mLookup = lookup;
+    }
+
+    /**
+     * @param targetTag tag of target fragment or NULL (if activity is a target)
+     * @return the target or the default target if it's not found or doesn't implement the callback interface;
+     *         the default target is not cached, so the search is repeated on the next call
+     */
+    public T resolve(@Nullable String targetTag) {
+        T target = null == mCachedTarget ? null : mCachedTarget.get();
+        if (null != target && isAlive(target)) {
+            return target;
+        }
+
+        Object found = mLookup.lookup(targetTag);
+        if (mType.isInstance(found)) {
+            target = mType.cast(found);
+            mCachedTarget = new WeakReference<>(target);
+            return target;
+        }
+        mCachedTarget = null;
+        return mDefaultTarget;
+    }
+
+    public void invalidate() {
+        mCachedTarget = null;
+    }
+
+    // --- private
+
+    private static boolean isAlive(Object target) {
+        if (target instanceof android.support.v4.app.Fragment) {
+            return ((android.support.v4.app.Fragment) target).isAdded();
+        }
+        if (target instanceof android.app.Fragment) {
+            return ((android.app.Fragment) target).isAdded();
+        }
+        return true;
+    }
+
+    interface ILookup {
+        Object lookup(String targetTag);
+    }
+}
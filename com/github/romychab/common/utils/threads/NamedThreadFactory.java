@@ -0,0 +1,27 @@
+package com.github.romychab.common.utils.threads;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates numbered threads with the specified name prefix ("name-1", "name-2", ...) and a priority
+ * slightly below normal, so background work doesn't compete with the main thread.
+ */
+public class NamedThreadFactory implements ThreadFactory {
+
+    private final String mName;
+    private final AtomicInteger mCounter = new AtomicInteger();
+
+    public NamedThreadFactory(String name) {
+        mName = name;
+    }
+
+    @Override
+    public Thread newThread(@NonNull Runnable runnable) {
+        Thread thread = new Thread(runnable, mName + "-" + mCounter.incrementAndGet());
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    }
+}